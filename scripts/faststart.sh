@@ -0,0 +1,105 @@
+#!/bin/bash
+# Fast start of udb-java: the Spring AOT bean definitions, the faststart
+# profile (lazy initialization) and a class data sharing archive recorded
+# from a training run.
+#
+#   scripts/faststart.sh train                 extract the jar to build/faststart
+#                                              and record build/faststart/udb-java.jsa
+#   scripts/faststart.sh run <port> <driver>   start the server with the archive
+#
+# UDB_DRIVER_CP        the driver jars, appended to the classpath
+# UDB_TRAIN_DATASOURCE the datasource of the training run, in JSON, by default
+#                      a SQLite file, which needs the SQLite driver in UDB_DRIVER_CP
+# The archive is only used with the same JDK and the same classpath, record it
+# again after every build and whenever the drivers change.
+set -e
+cd "$(dirname "$0")/.."
+
+VERSION=0.0.2
+DIR=build/faststart
+JAR=$DIR/udb-java-$VERSION.jar
+ARCHIVE=$DIR/udb-java.jsa
+PORT=${UDB_TRAIN_PORT:-10099}
+FLAGS="-Dspring.aot.enabled=true -Dspring.profiles.active=faststart"
+DATASOURCE=${UDB_TRAIN_DATASOURCE:-"{\"name\":\"train\",\"database\":\"train\",\"driverJdbcUrl\":\"jdbc:sqlite:$PWD/$DIR/train.db\",\"driverMainClass\":\"org.sqlite.JDBC\",\"username\":\"\",\"password\":\"\"}"}
+
+classpath() {
+    if [ -n "$UDB_DRIVER_CP" ]; then
+        echo "$JAR:$UDB_DRIVER_CP"
+    else
+        echo "$JAR"
+    fi
+}
+
+# Wait until the server answers, at most 60 seconds
+wait_ready() {
+    for i in $(seq 1 600); do
+        if curl -s -o /dev/null "http://127.0.0.1:$1/api/base/startup"; then
+            return 0
+        fi
+        sleep 0.1
+    done
+    return 1
+}
+
+post() {
+    curl -s -H 'Content-Type: application/json' -H "Accept: ${3:-application/json}" -d "$2" \
+        "http://127.0.0.1:$PORT$1"
+}
+
+# The requests of the desktop client at startup
+exercise() {
+    local ds
+    ds=$(printf '%s' "$DATASOURCE" | sed 's/\\/\\\\/g; s/"/\\"/g')
+    post /api/base/executeSql "{\"datasource\":\"$ds\",\"sql\":\"SELECT 1\"}" > /dev/null
+    post /api/base/executeSql "{\"datasource\":\"$ds\",\"sql\":\"SELECT 1\"}" application/x-udb-frames > /dev/null
+    post /api/meta/tables "{\"datasource\":\"$ds\"}" > /dev/null
+    local id
+    for sql in "SELECT 1" "SELECT 1;SELECT 2"; do
+        id=$(post /api/task/run "{\"type\":\"sql\",\"datasource\":\"$ds\",\"sql\":\"$sql\"}" \
+            | sed -n 's/.*"id":"\([^"]*\)".*/\1/p')
+        if [ -n "$id" ]; then
+            sleep 0.5
+            post /api/task/result "{\"id\":\"$id\"}" > /dev/null
+            post /api/task/list "{}" > /dev/null
+        fi
+    done
+}
+
+train() {
+    ls build/libs/udb-java-$VERSION.jar > /dev/null
+    rm -rf $DIR
+    java -Djarmode=tools -jar build/libs/udb-java-$VERSION.jar extract --destination $DIR
+    if [ -z "$UDB_DRIVER_CP" ] && [ -z "$UDB_TRAIN_DATASOURCE" ]; then
+        echo "No UDB_DRIVER_CP, the training queries will fail and the JDBC classes are not archived"
+    fi
+    # The archive is written when the JVM exits
+    java -XX:ArchiveClassesAtExit=$ARCHIVE $FLAGS -cp "$(classpath)" com.udb.server.UdbApplication $PORT train &
+    local pid=$!
+    if ! wait_ready $PORT; then
+        kill $pid
+        echo "The training server did not start"
+        exit 1
+    fi
+    exercise
+    kill $pid
+    wait $pid || true
+    ls -l $ARCHIVE
+}
+
+run() {
+    exec java -XX:SharedArchiveFile=$ARCHIVE $FLAGS -cp "$(classpath)" com.udb.server.UdbApplication "$1" "$2"
+}
+
+case "$1" in
+    train)
+        train
+        ;;
+    run)
+        run "$2" "$3"
+        ;;
+    *)
+        echo "Usage: $0 train | run <port> <driver>"
+        exit 1
+        ;;
+esac
@@ -0,0 +1,62 @@
+#!/bin/bash
+# Time to the first query of udb-java, from the launch of the JVM to the first
+# answer of /api/base/executeSql, with the plain jar and with the fast start
+# (AOT, faststart profile and the class data sharing archive).
+# Run scripts/faststart.sh train first, with the same UDB_DRIVER_CP and
+# UDB_TRAIN_DATASOURCE.
+#
+#   scripts/startup-bench.sh [runs]
+set -e
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+PORT=${UDB_BENCH_PORT:-10098}
+DIR=build/faststart
+JAR=$DIR/udb-java-0.0.2.jar
+ARCHIVE=$DIR/udb-java.jsa
+CP=$JAR${UDB_DRIVER_CP:+:$UDB_DRIVER_CP}
+DATASOURCE=${UDB_TRAIN_DATASOURCE:-"{\"name\":\"train\",\"database\":\"train\",\"driverJdbcUrl\":\"jdbc:sqlite:$PWD/$DIR/train.db\",\"driverMainClass\":\"org.sqlite.JDBC\",\"username\":\"\",\"password\":\"\"}"}
+DS=$(printf '%s' "$DATASOURCE" | sed 's/\\/\\\\/g; s/"/\\"/g')
+
+ls $ARCHIVE > /dev/null
+
+# Launch the server, query until the first answer, print the milliseconds
+first_query() {
+    local start pid
+    start=$(date +%s%N)
+    java "$@" -cp "$CP" com.udb.server.UdbApplication $PORT bench > /dev/null 2>&1 &
+    pid=$!
+    for i in $(seq 1 3000); do
+        if curl -s -H 'Content-Type: application/json' \
+            -d "{\"datasource\":\"$DS\",\"sql\":\"SELECT 1\"}" \
+            "http://127.0.0.1:$PORT/api/base/executeSql" 2> /dev/null | grep -q '"status":200'; then
+            break
+        fi
+        sleep 0.02
+    done
+    local end
+    end=$(date +%s%N)
+    # The times measured by the server itself
+    local server
+    server=$(curl -s "http://127.0.0.1:$PORT/api/base/startup")
+    kill $pid
+    wait $pid 2> /dev/null || true
+    echo "$(( (end - start) / 1000000 )) $server"
+}
+
+bench() {
+    local name=$1
+    shift
+    local total=0
+    for run in $(seq 1 $RUNS); do
+        local line ms
+        line=$(first_query "$@")
+        ms=${line%% *}
+        total=$((total + ms))
+        echo "$name run $run: ${ms}ms to first query, server ${line#* }"
+    done
+    echo "$name average: $((total / RUNS))ms"
+}
+
+bench plain
+bench faststart -XX:SharedArchiveFile=$ARCHIVE -Dspring.aot.enabled=true -Dspring.profiles.active=faststart
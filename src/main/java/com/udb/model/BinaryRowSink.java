@@ -0,0 +1,75 @@
+package com.udb.model;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.udb.model.binary.BinaryColumn;
+import com.udb.model.binary.BinaryDumpWriter;
+
+/**
+ * The BinaryRowSink class writes all the tables to one binary dump file.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class BinaryRowSink implements RowSink {
+    private final AtomicLong bytes = new AtomicLong();
+    private final BinaryDumpWriter binaryWriter;
+    private String dropSql = "";
+    private String createSql = "";
+    private boolean inTable;
+
+    public BinaryRowSink(String file) throws Exception {
+        this.binaryWriter = new BinaryDumpWriter(new BufferedOutputStream(
+                new CountingOutputStream(new FileOutputStream(file), bytes), 64 * 1024));
+    }
+
+    /**
+     * Set the structure statements stored in the header of the next table.
+     *
+     * @param dropSql
+     * @param createSql
+     */
+    public void setTableStructure(String dropSql, String createSql) {
+        this.dropSql = dropSql;
+        this.createSql = createSql;
+    }
+
+    @Override
+    public void startTable(String table, ResultSetMetaData metaData) throws Exception {
+        binaryWriter.startTable(table, dropSql, createSql, BinaryColumn.of(metaData));
+        dropSql = "";
+        createSql = "";
+        inTable = true;
+    }
+
+    @Override
+    public void writeRows(List<Object[]> rows) throws Exception {
+        for (Object[] row : rows) {
+            binaryWriter.writeRow(row);
+        }
+    }
+
+    @Override
+    public void endTable() throws Exception {
+        if (inTable) {
+            binaryWriter.endTable();
+            inTable = false;
+        }
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        binaryWriter.close();
+    }
+}
@@ -0,0 +1,35 @@
+package com.udb.model;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CountingOutputStream class adds the number of bytes written to an
+ * output stream to a counter, which can be shared by several files.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class CountingOutputStream extends FilterOutputStream {
+    private final AtomicLong counter;
+
+    public CountingOutputStream(OutputStream out, AtomicLong counter) {
+        super(out);
+        this.counter = counter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        counter.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        counter.addAndGet(len);
+    }
+}
@@ -0,0 +1,89 @@
+package com.udb.model;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The CsvRowSink class writes every table to a CSV file of its own, with a
+ * header row of column names.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class CsvRowSink implements RowSink {
+    private final Function<String, String> fileOf;
+    private final AtomicLong bytes = new AtomicLong();
+    private BufferedWriter writer;
+
+    /**
+     * @param fileOf the file of a table
+     */
+    public CsvRowSink(Function<String, String> fileOf) {
+        this.fileOf = fileOf;
+    }
+
+    @Override
+    public void startTable(String table, ResultSetMetaData metaData) throws Exception {
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new CountingOutputStream(new FileOutputStream(fileOf.apply(table)), bytes),
+                StandardCharsets.UTF_8), 64 * 1024);
+        int columnCount = metaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            writer.write(escapeCsv(metaData.getColumnName(i)));
+            if (i < columnCount) {
+                writer.write(",");
+            }
+        }
+        writer.newLine();
+    }
+
+    @Override
+    public void writeRows(List<Object[]> rows) throws Exception {
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                writer.write(escapeCsv(ExportEngine.text(row[i])));
+                if (i < row.length - 1) {
+                    writer.write(",");
+                }
+            }
+            writer.newLine();
+        }
+    }
+
+    @Override
+    public void endTable() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        endTable();
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        String escaped = value.replace("\"", "\"\"");
+        if (escaped.contains(",") || escaped.contains("\n") || escaped.contains("\"")) {
+            return "\"" + escaped + "\"";
+        }
+        return escaped;
+    }
+}
@@ -0,0 +1,255 @@
+package com.udb.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.udb.server.service.BaseService;
+import com.udb.server.service.jdbc.FetchStrategy;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The ExportEngine class reads tables once and hands the rows to any number of
+ * RowSinks, so exporting a table to several formats costs a single scan.
+ * Rows are read in batches and every batch is given to all the sinks before
+ * the next one is read.
+ * Formats are looked up by name among the registered sink factories. csv,
+ * json, ndjson, sql, xlsx (or excel) and binary are built in, other formats can
+ * be added with {@link #register(String, RowSink.Factory)}.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class ExportEngine implements Closeable {
+    private static final Map<String, RowSink.Factory> factories = new ConcurrentHashMap<>();
+
+    static {
+        register("csv", (path, name) -> new CsvRowSink(table -> path + "/" + name + "." + table + ".csv"));
+        register("json", (path, name) -> new JsonRowSink(table -> path + "/" + name + "." + table + ".json", false));
+        register("ndjson",
+                (path, name) -> new JsonRowSink(table -> path + "/" + name + "." + table + ".ndjson", true));
+        register("sql", (path, name) -> new SqlRowSink(path + "/" + name + ".sql", ""));
+        register("xlsx", (path, name) -> new XlsxRowSink(path + "/" + name + ".xlsx"));
+        register("excel", (path, name) -> new XlsxRowSink(path + "/" + name + ".xlsx"));
+        register("binary", (path, name) -> new BinaryRowSink(path + "/" + name + ".udbb"));
+    }
+
+    private final List<RowSink> sinks;
+    private final int batchSize;
+    private long rows;
+    // Called after every batch, to report the progress
+    private Runnable batchListener;
+
+    public ExportEngine(List<RowSink> sinks) {
+        this(sinks, 1000);
+    }
+
+    public ExportEngine(List<RowSink> sinks, int batchSize) {
+        this.sinks = sinks;
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchListener(Runnable batchListener) {
+        this.batchListener = batchListener;
+    }
+
+    /**
+     * Get the number of rows written since the engine was created.
+     *
+     * @return
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of bytes written by all the sinks.
+     *
+     * @return
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (RowSink sink : sinks) {
+            bytes += sink.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Register the sink factory of a format.
+     *
+     * @param format
+     * @param factory
+     */
+    public static void register(String format, RowSink.Factory factory) {
+        factories.put(format, factory);
+    }
+
+    /**
+     * Create the sink of a registered format.
+     *
+     * @param format
+     * @param path   the directory of the files
+     * @param name   the base name of the files
+     * @return
+     * @throws Exception if the format is not registered
+     */
+    public static RowSink createSink(String format, String path, String name) throws Exception {
+        RowSink.Factory factory = factories.get(format.trim());
+        if (factory == null) {
+            throw new Exception("Unsupported format:" + format);
+        }
+        return factory.create(path, name);
+    }
+
+    /**
+     * Export tables of databases to files, reading every table once whatever
+     * the number of formats.
+     *
+     * @param args    [{database:"",tables:[""]}]
+     * @param path    the directory of the files
+     * @param formats
+     * @throws Exception
+     */
+    public static void export(String args, String path, List<String> formats) throws Exception {
+        System.out.println("Export data to " + formats + " files:" + args);
+        JSONArray argsJson = JSONArray.parseArray(args);
+        for (int d = 0; d < argsJson.size(); d++) {
+            String databaseName = argsJson.getJSONObject(d).getString("database");
+            HikariDataSource dataSource = BaseService.getDataSource(databaseName);
+            if (dataSource == null) {
+                continue;
+            }
+            System.out.println("Export database:" + databaseName);
+            List<RowSink> sinks = new ArrayList<>();
+            try (ExportEngine engine = new ExportEngine(sinks)) {
+                for (String format : formats) {
+                    sinks.add(createSink(format, path, databaseName));
+                }
+                JSONArray tablesJson = argsJson.getJSONObject(d).getJSONArray("tables");
+                for (int j = 0; j < tablesJson.size(); j++) {
+                    String tableName = tablesJson.getString(j);
+                    System.out.println("Export table:" + tableName);
+                    try (Connection conn = dataSource.getConnection()) {
+                        FetchStrategy.prepareConnection(conn);
+                        try (Statement stmt = FetchStrategy.createStatement(conn);
+                                ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+                            engine.startTable(tableName, rs.getMetaData());
+                            long rows = engine.scan(rs);
+                            engine.endTable();
+                            System.out.println("Data rows: " + rows);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a table on all the sinks.
+     *
+     * @param table
+     * @param metaData
+     * @throws Exception
+     */
+    public void startTable(String table, ResultSetMetaData metaData) throws Exception {
+        for (RowSink sink : sinks) {
+            sink.startTable(table, metaData);
+        }
+    }
+
+    /**
+     * Read a result set to the end and hand its rows to all the sinks.
+     *
+     * @param rs
+     * @return the number of rows read
+     * @throws Exception
+     */
+    public long scan(ResultSet rs) throws Exception {
+        int columnCount = rs.getMetaData().getColumnCount();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        long count = 0;
+        while (rs.next()) {
+            Object[] row = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                row[i] = rs.getObject(i + 1);
+            }
+            batch.add(row);
+            if (batch.size() >= batchSize) {
+                count += write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            count += write(batch);
+        }
+        return count;
+    }
+
+    private int write(List<Object[]> batch) throws Exception {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Export has been terminated");
+        }
+        for (RowSink sink : sinks) {
+            sink.writeRows(batch);
+        }
+        rows += batch.size();
+        if (batchListener != null) {
+            batchListener.run();
+        }
+        return batch.size();
+    }
+
+    /**
+     * End the current table on all the sinks.
+     *
+     * @throws Exception
+     */
+    public void endTable() throws Exception {
+        for (RowSink sink : sinks) {
+            sink.endTable();
+        }
+    }
+
+    /**
+     * Close all the sinks, even if one of them fails.
+     */
+    @Override
+    public void close() throws IOException {
+        RowSink.closeAll(sinks);
+    }
+
+    /**
+     * The text of a value, for the text formats.
+     *
+     * @param value
+     * @return null for null
+     * @throws Exception
+     */
+    public static String text(Object value) throws Exception {
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        } else if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            return new String(blob.getBytes(1, (int) blob.length()), StandardCharsets.UTF_8);
+        }
+        return value.toString();
+    }
+}
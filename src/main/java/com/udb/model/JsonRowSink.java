@@ -0,0 +1,113 @@
+package com.udb.model;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONWriter;
+
+/**
+ * The JsonRowSink class writes every table to a JSON file of its own, either
+ * as one array of objects or as JSON Lines, one object per line.
+ * Rows are written with a JSONWriter straight to a buffered output stream, so
+ * memory stays constant per table.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class JsonRowSink implements RowSink {
+    // Flush the writer to the file once it holds this many bytes
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    private final Function<String, String> fileOf;
+    private final boolean lines;
+    private final AtomicLong bytes = new AtomicLong();
+    private OutputStream out;
+    private JSONWriter jsonWriter;
+    private byte[][] names;
+    private boolean first;
+
+    /**
+     * @param fileOf the file of a table
+     * @param lines  true for JSON Lines, false for an array
+     */
+    public JsonRowSink(Function<String, String> fileOf, boolean lines) {
+        this.fileOf = fileOf;
+        this.lines = lines;
+    }
+
+    @Override
+    public void startTable(String table, ResultSetMetaData metaData) throws Exception {
+        int columnCount = metaData.getColumnCount();
+        // Encode the column names once, quoted and followed by the colon
+        names = new byte[columnCount][];
+        for (int i = 1; i <= columnCount; i++) {
+            names[i - 1] = (JSON.toJSONString(metaData.getColumnName(i)) + ":").getBytes(StandardCharsets.UTF_8);
+        }
+        out = new BufferedOutputStream(new CountingOutputStream(new FileOutputStream(fileOf.apply(table)), bytes),
+                FLUSH_SIZE);
+        jsonWriter = JSONWriter.ofUTF8();
+        if (!lines) {
+            jsonWriter.startArray();
+        }
+        first = true;
+    }
+
+    @Override
+    public void writeRows(List<Object[]> rows) throws Exception {
+        for (Object[] row : rows) {
+            if (!lines && !first) {
+                jsonWriter.writeComma();
+            }
+            first = false;
+            jsonWriter.startObject();
+            for (int i = 0; i < row.length; i++) {
+                jsonWriter.writeNameRaw(names[i]);
+                jsonWriter.writeAny(row[i]);
+            }
+            jsonWriter.endObject();
+            if (lines) {
+                jsonWriter.writeRaw('\n');
+            }
+            if (jsonWriter.size() >= FLUSH_SIZE) {
+                jsonWriter.flushTo(out);
+            }
+        }
+    }
+
+    @Override
+    public void endTable() throws IOException {
+        if (jsonWriter == null) {
+            return;
+        }
+        try {
+            if (!lines) {
+                jsonWriter.endArray();
+            }
+            jsonWriter.flushTo(out);
+        } finally {
+            jsonWriter.close();
+            out.close();
+            jsonWriter = null;
+            out = null;
+        }
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        endTable();
+    }
+}
@@ -0,0 +1,90 @@
+package com.udb.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+
+/**
+ * The RowSink interface receives the rows of a table scan.
+ * ExportEngine reads a table once and hands every batch of rows to all its
+ * sinks, so one scan can produce several formats. A sink owns its output: it
+ * opens a file per table or one file for all the tables, and releases it when
+ * the table or the export ends.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public interface RowSink extends Closeable {
+    /**
+     * Start a table. The metadata is only valid during the call.
+     *
+     * @param table
+     * @param metaData
+     * @throws Exception
+     */
+    void startTable(String table, ResultSetMetaData metaData) throws Exception;
+
+    /**
+     * Write a batch of rows of the current table, one value per column.
+     *
+     * @param rows
+     * @throws Exception
+     */
+    void writeRows(List<Object[]> rows) throws Exception;
+
+    /**
+     * End the current table.
+     *
+     * @throws Exception
+     */
+    void endTable() throws Exception;
+
+    /**
+     * Get the number of bytes written so far.
+     *
+     * @return 0 when the sink cannot tell before it is closed
+     */
+    default long getBytes() {
+        return 0;
+    }
+
+    /**
+     * End the export.
+     *
+     * @throws IOException
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Close all the sinks, even when one of them fails.
+     *
+     * @param sinks
+     * @throws IOException the first error
+     */
+    static void closeAll(List<? extends RowSink> sinks) throws IOException {
+        IOException error = null;
+        for (RowSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Create the sink of a format, writing to files named after a base name in
+     * a directory.
+     */
+    interface Factory {
+        RowSink create(String path, String name) throws Exception;
+    }
+}
@@ -0,0 +1,138 @@
+package com.udb.model;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.udb.server.service.jdbc.DatabaseFamily;
+
+/**
+ * The SqlRowSink class writes all the tables to one SQL file, one INSERT
+ * statement per row. Numbers are written as literals and everything else as
+ * quoted strings, but for booleans and binary values, written in the literals
+ * of the database the dump is read from: TRUE and FALSE, or 1 and 0 on SQL
+ * Server and Oracle, and X'..', or '\x..'::bytea on PostgreSQL, 0x.. on SQL
+ * Server and HEXTORAW('..') on Oracle.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class SqlRowSink implements RowSink {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final BufferedWriter writer;
+    private final String identifierQuoteSymbol;
+    private final DatabaseFamily family;
+    private String insertPrefix;
+
+    public SqlRowSink(String file, String identifierQuoteSymbol) throws Exception {
+        this(file, identifierQuoteSymbol, DatabaseFamily.OTHER);
+    }
+
+    public SqlRowSink(String file, String identifierQuoteSymbol, DatabaseFamily family) throws Exception {
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new CountingOutputStream(new FileOutputStream(file), bytes), StandardCharsets.UTF_8), 64 * 1024);
+        this.identifierQuoteSymbol = identifierQuoteSymbol == null ? "" : identifierQuoteSymbol;
+        this.family = family;
+    }
+
+    /**
+     * Write text as is, for comments and structure statements.
+     *
+     * @param text
+     * @throws Exception
+     */
+    public void writeRaw(String text) throws Exception {
+        writer.write(text);
+    }
+
+    @Override
+    public void startTable(String table, ResultSetMetaData metaData) throws Exception {
+        StringBuilder prefix = new StringBuilder("INSERT INTO ").append(identifierQuoteSymbol).append(table)
+                .append(identifierQuoteSymbol).append(" (");
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            prefix.append(identifierQuoteSymbol).append(metaData.getColumnName(i)).append(identifierQuoteSymbol);
+            if (i < metaData.getColumnCount()) {
+                prefix.append(",");
+            }
+        }
+        insertPrefix = prefix.append(") VALUES (").toString();
+    }
+
+    @Override
+    public void writeRows(List<Object[]> rows) throws Exception {
+        StringBuilder sql = new StringBuilder();
+        for (Object[] row : rows) {
+            sql.setLength(0);
+            sql.append(insertPrefix);
+            for (int i = 0; i < row.length; i++) {
+                appendLiteral(sql, row[i]);
+                if (i < row.length - 1) {
+                    sql.append(",");
+                }
+            }
+            sql.append(");\n");
+            writer.write(sql.toString());
+        }
+    }
+
+    private void appendLiteral(StringBuilder sql, Object value) throws Exception {
+        if (value == null) {
+            sql.append("NULL");
+        } else if (value instanceof BigDecimal) {
+            sql.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            sql.append(value);
+        } else if (value instanceof Boolean) {
+            boolean bool = (Boolean) value;
+            if (family == DatabaseFamily.SQLSERVER || family == DatabaseFamily.ORACLE) {
+                sql.append(bool ? "1" : "0");
+            } else {
+                sql.append(bool ? "TRUE" : "FALSE");
+            }
+        } else if (value instanceof byte[]) {
+            String suffix = "'";
+            if (family == DatabaseFamily.POSTGRESQL) {
+                sql.append("'\\x");
+                suffix = "'::bytea";
+            } else if (family == DatabaseFamily.SQLSERVER) {
+                sql.append("0x");
+                suffix = "";
+            } else if (family == DatabaseFamily.ORACLE) {
+                sql.append("HEXTORAW('");
+                suffix = "')";
+            } else {
+                sql.append("X'");
+            }
+            for (byte b : (byte[]) value) {
+                sql.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            sql.append(suffix);
+        } else {
+            sql.append("'").append(ExportEngine.text(value).replace("'", "''")).append("'");
+        }
+    }
+
+    @Override
+    public void endTable() throws Exception {
+        writer.flush();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.udb.model;
+
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The XlsxRowSink class writes all the tables to one XLSX workbook, one sheet
+ * per table, through XlsxStreamWriter.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class XlsxRowSink implements RowSink {
+    private final XlsxStreamWriter xlsxWriter;
+    private final AtomicLong bytes = new AtomicLong();
+
+    public XlsxRowSink(String file) {
+        this.xlsxWriter = new XlsxStreamWriter(file);
+    }
+
+    @Override
+    public void startTable(String table, ResultSetMetaData metaData) throws Exception {
+        List<String> headers = new ArrayList<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            headers.add(metaData.getColumnName(i));
+        }
+        xlsxWriter.startSheet(table, headers);
+    }
+
+    @Override
+    public void writeRows(List<Object[]> rows) throws Exception {
+        for (Object[] row : rows) {
+            xlsxWriter.writeRow(Arrays.asList(row));
+            long rowBytes = 0;
+            for (Object value : row) {
+                rowBytes += value == null ? 0 : ExportEngine.text(value).length();
+            }
+            bytes.addAndGet(rowBytes);
+        }
+    }
+
+    @Override
+    public void endTable() throws Exception {
+        xlsxWriter.flush();
+    }
+
+    /**
+     * The workbook is only written out when it is finished, so this is the
+     * size of the cell text written so far.
+     */
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() {
+        xlsxWriter.close();
+    }
+}
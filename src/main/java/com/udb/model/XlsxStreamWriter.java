@@ -0,0 +1,199 @@
+package com.udb.model;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.alibaba.excel.EasyExcel;
+import com.alibaba.excel.ExcelWriter;
+import com.alibaba.excel.converters.Converter;
+import com.alibaba.excel.metadata.GlobalConfiguration;
+import com.alibaba.excel.metadata.data.WriteCellData;
+import com.alibaba.excel.metadata.property.ExcelContentProperty;
+import com.alibaba.excel.write.builder.ExcelWriterBuilder;
+import com.alibaba.excel.write.metadata.WriteSheet;
+
+/**
+ * The XlsxStreamWriter class writes rows to an XLSX workbook with bounded
+ * memory.
+ * Rows are buffered in fixed-size chunks and handed to EasyExcel, which
+ * streams them to disk. When a sheet reaches the Excel limit of 1,048,576 rows,
+ * the rows continue on a new sheet named after the table with a numeric
+ * suffix. Sheet names that would clash once cut to 31 characters get a
+ * counter suffix, and every sheet has its header row, even without rows.
+ * The workbook is only finished when the writer is closed, so any number of
+ * tables can be written to the same file.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class XlsxStreamWriter implements AutoCloseable {
+    public static final int MAX_SHEET_ROWS = 1048576;
+    // Excel does not allow longer sheet names
+    private static final int MAX_SHEET_NAME = 31;
+
+    private final ExcelWriter excelWriter;
+    private final int chunkSize;
+    private final int maxSheetRows;
+    private int sheetNo;
+    private String tableName;
+    private List<List<String>> head;
+    private int part;
+    private WriteSheet writeSheet;
+    private long sheetRows;
+    private List<List<Object>> chunk;
+    // Excel compares the sheet names case-insensitively
+    private final Set<String> sheetNames = new HashSet<>();
+
+    public XlsxStreamWriter(OutputStream out) {
+        this(out, 1000, MAX_SHEET_ROWS);
+    }
+
+    public XlsxStreamWriter(String path) {
+        this(path, 1000, MAX_SHEET_ROWS);
+    }
+
+    public XlsxStreamWriter(OutputStream out, int chunkSize, int maxSheetRows) {
+        this(EasyExcel.write(out), chunkSize, maxSheetRows);
+    }
+
+    public XlsxStreamWriter(String path, int chunkSize, int maxSheetRows) {
+        this(EasyExcel.write(path), chunkSize, maxSheetRows);
+    }
+
+    private XlsxStreamWriter(ExcelWriterBuilder builder, int chunkSize, int maxSheetRows) {
+        this.excelWriter = builder
+                .registerConverter(new DateConverter())
+                .registerConverter(new TimestampConverter())
+                .registerConverter(new TimeConverter())
+                .build();
+        this.chunkSize = chunkSize;
+        this.maxSheetRows = maxSheetRows;
+        this.chunk = new ArrayList<>(chunkSize);
+    }
+
+    /**
+     * Start a new sheet for a table.
+     *
+     * @param tableName
+     * @param headers the column names, written as the first row of every sheet
+     */
+    public void startSheet(String tableName, List<String> headers) {
+        flush();
+        this.tableName = tableName;
+        this.head = new ArrayList<>();
+        for (String header : headers) {
+            List<String> column = new ArrayList<>();
+            column.add(header);
+            this.head.add(column);
+        }
+        this.part = 0;
+        newSheet();
+    }
+
+    /**
+     * Add a row to the current sheet, starting a new sheet when it is full.
+     *
+     * @param row
+     */
+    public void writeRow(List<Object> row) {
+        if (sheetRows >= maxSheetRows) {
+            flush();
+            newSheet();
+        }
+        chunk.add(row);
+        sheetRows++;
+        if (chunk.size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the buffered rows to the current sheet.
+     */
+    public void flush() {
+        if (writeSheet != null && !chunk.isEmpty()) {
+            excelWriter.write(chunk, writeSheet);
+            chunk = new ArrayList<>(chunkSize);
+        }
+    }
+
+    private void newSheet() {
+        part++;
+        String suffix = part > 1 ? "_" + part : "";
+        String name = truncate(tableName, MAX_SHEET_NAME - suffix.length()) + suffix;
+        for (int n = 2; !sheetNames.add(name.toLowerCase()); n++) {
+            String counter = "~" + n;
+            name = truncate(tableName, MAX_SHEET_NAME - suffix.length() - counter.length()) + suffix + counter;
+        }
+        writeSheet = EasyExcel.writerSheet(sheetNo++, name).head(head).build();
+        // Writes the head, so that the sheet exists when no row follows
+        excelWriter.write(new ArrayList<>(), writeSheet);
+        // The head takes the first row of the sheet
+        sheetRows = 1;
+    }
+
+    private static String truncate(String name, int length) {
+        return name.length() > length ? name.substring(0, length) : name;
+    }
+
+    /**
+     * Write the remaining rows and finish the workbook.
+     */
+    @Override
+    public void close() {
+        flush();
+        excelWriter.finish();
+    }
+
+    public static class DateConverter implements Converter<java.sql.Date> {
+        @Override
+        public Class<java.sql.Date> supportJavaTypeKey() {
+            return java.sql.Date.class;
+        }
+
+        @Override
+        public WriteCellData<?> convertToExcelData(java.sql.Date value, ExcelContentProperty property,
+                GlobalConfiguration config) {
+            if (value == null) {
+                return new WriteCellData<>("");
+            }
+            return new WriteCellData<>(value.toString());
+        }
+    }
+
+    public static class TimestampConverter implements Converter<java.sql.Timestamp> {
+        @Override
+        public Class<java.sql.Timestamp> supportJavaTypeKey() {
+            return java.sql.Timestamp.class;
+        }
+
+        @Override
+        public WriteCellData<?> convertToExcelData(java.sql.Timestamp value, ExcelContentProperty property,
+                GlobalConfiguration config) {
+            if (value == null) {
+                return new WriteCellData<>("");
+            }
+            return new WriteCellData<>(value.toString());
+        }
+    }
+
+    public static class TimeConverter implements Converter<java.sql.Time> {
+        @Override
+        public Class<java.sql.Time> supportJavaTypeKey() {
+            return java.sql.Time.class;
+        }
+
+        @Override
+        public WriteCellData<?> convertToExcelData(java.sql.Time value, ExcelContentProperty property,
+                GlobalConfiguration config) {
+            if (value == null) {
+                return new WriteCellData<>("");
+            }
+            return new WriteCellData<>(value.toString());
+        }
+    }
+}
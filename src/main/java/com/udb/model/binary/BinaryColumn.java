@@ -0,0 +1,122 @@
+package com.udb.model.binary;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The BinaryColumn class describes a column of a table in a binary dump: its
+ * name, its JDBC type and the kind of encoding used for its values.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class BinaryColumn {
+    /**
+     * The encoding of the values of a column.
+     */
+    public enum Kind {
+        // zigzag varint of the delta to the previous value
+        LONG,
+        // 8 bytes IEEE 754
+        DOUBLE,
+        // plain text of the number
+        DECIMAL,
+        // one bit per value
+        BOOLEAN,
+        // zigzag varint of the delta of the epoch day
+        DATE,
+        // varint of the nano of day
+        TIME,
+        // zigzag varint of the delta of the epoch millisecond, then the nanos
+        TIMESTAMP,
+        // length-prefixed raw bytes
+        BYTES,
+        // dictionary or length-prefixed UTF-8
+        STRING
+    }
+
+    private final String name;
+    private final int jdbcType;
+    private final String typeName;
+    private final Kind kind;
+
+    public BinaryColumn(String name, int jdbcType, String typeName, Kind kind) {
+        this.name = name;
+        this.jdbcType = jdbcType;
+        this.typeName = typeName;
+        this.kind = kind;
+    }
+
+    /**
+     * Describe the columns of a result set.
+     *
+     * @param metaData
+     * @return
+     * @throws SQLException
+     */
+    public static List<BinaryColumn> of(ResultSetMetaData metaData) throws SQLException {
+        List<BinaryColumn> columns = new ArrayList<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            int jdbcType = metaData.getColumnType(i);
+            columns.add(new BinaryColumn(metaData.getColumnName(i), jdbcType, metaData.getColumnTypeName(i),
+                    kindOf(jdbcType, metaData.getPrecision(i), metaData.isSigned(i))));
+        }
+        return columns;
+    }
+
+    static Kind kindOf(int jdbcType, int precision, boolean signed) {
+        switch (jdbcType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return Kind.LONG;
+            case Types.BIGINT:
+                // An unsigned BIGINT does not fit in a long
+                return signed ? Kind.LONG : Kind.DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Kind.DOUBLE;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return Kind.DECIMAL;
+            case Types.BOOLEAN:
+                return Kind.BOOLEAN;
+            case Types.BIT:
+                return precision > 1 ? Kind.BYTES : Kind.BOOLEAN;
+            case Types.DATE:
+                return Kind.DATE;
+            case Types.TIME:
+                return Kind.TIME;
+            case Types.TIMESTAMP:
+                return Kind.TIMESTAMP;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return Kind.BYTES;
+            default:
+                return Kind.STRING;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getJdbcType() {
+        return jdbcType;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,376 @@
+package com.udb.model.binary;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The BinaryDumpReader class reads files written by BinaryDumpWriter.
+ * Tables are read one after the other with {@link #nextTable()}, and their rows
+ * one row group at a time with {@link #nextRowGroup()}. The byte offset of
+ * every table is available, so a caller can index a file once and come back to
+ * a table later with {@link #seek(long)}.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class BinaryDumpReader implements Closeable {
+    private final FileInputStream file;
+    private DataInputStream in;
+    // Byte offset of the next byte of the stream
+    private long position;
+    private long tableStart;
+    private String tableName;
+    private String dropSql;
+    private String createSql;
+    private List<BinaryColumn> columns;
+    private boolean inTable;
+
+    public BinaryDumpReader(File file) throws IOException {
+        this.file = new FileInputStream(file);
+        open(0);
+        byte[] magic = in.readNBytes(BinaryFormat.MAGIC.length);
+        if (!Arrays.equals(magic, BinaryFormat.MAGIC)) {
+            close();
+            throw new IOException("Not a binary dump file:" + file);
+        }
+        int version = in.read();
+        if (version != BinaryFormat.VERSION) {
+            close();
+            throw new IOException("Unsupported binary dump version:" + version);
+        }
+    }
+
+    private void open(long offset) throws IOException {
+        file.getChannel().position(offset);
+        position = offset;
+        in = new DataInputStream(new FilterInputStream(new BufferedInputStream(file, 64 * 1024)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    position++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                position += skipped;
+                return skipped;
+            }
+        });
+        inTable = false;
+    }
+
+    /**
+     * Get the byte offset of the next unread byte.
+     *
+     * @return
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Move to a table offset returned by {@link #getTableStart()}.
+     *
+     * @param offset
+     * @throws IOException
+     */
+    public void seek(long offset) throws IOException {
+        open(offset);
+    }
+
+    /**
+     * Read the header of the next table, skipping what is left of the current
+     * one.
+     *
+     * @return false at the end of the file
+     * @throws IOException
+     */
+    public boolean nextTable() throws IOException {
+        while (inTable) {
+            skipRowGroup();
+        }
+        long start = getPosition();
+        int marker = in.read();
+        if (marker < 0) {
+            return false;
+        }
+        if (marker != BinaryFormat.TABLE) {
+            throw new IOException("Corrupted binary dump at offset " + start);
+        }
+        tableStart = start;
+        tableName = BinaryFormat.readString(in);
+        dropSql = BinaryFormat.readString(in);
+        createSql = BinaryFormat.readString(in);
+        int count = (int) BinaryFormat.readVarLong(in);
+        columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = BinaryFormat.readString(in);
+            int jdbcType = (int) BinaryFormat.unzigzag(BinaryFormat.readVarLong(in));
+            String typeName = BinaryFormat.readString(in);
+            BinaryColumn.Kind kind = BinaryColumn.Kind.values()[in.readUnsignedByte()];
+            columns.add(new BinaryColumn(name, jdbcType, typeName, kind));
+        }
+        inTable = true;
+        return true;
+    }
+
+    public long getTableStart() {
+        return tableStart;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getDropSql() {
+        return dropSql;
+    }
+
+    public String getCreateSql() {
+        return createSql;
+    }
+
+    public List<BinaryColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Skip the next row group of the current table without decoding it.
+     *
+     * @return the number of rows skipped, or -1 at the end of the table
+     * @throws IOException
+     */
+    public long skipRowGroup() throws IOException {
+        if (!nextRowGroupHeader()) {
+            return -1;
+        }
+        long rows = BinaryFormat.readVarLong(in);
+        long length = BinaryFormat.readVarLong(in);
+        // payload and checksum
+        in.skipNBytes(length + 4);
+        return rows;
+    }
+
+    /**
+     * Read and decode the next row group of the current table.
+     *
+     * @return the rows, or null at the end of the table
+     * @throws IOException if the file is truncated or the checksum does not
+     *                     match
+     */
+    public List<Object[]> nextRowGroup() throws IOException {
+        if (!nextRowGroupHeader()) {
+            return null;
+        }
+        int rows = (int) BinaryFormat.readVarLong(in);
+        int length = (int) BinaryFormat.readVarLong(in);
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length) {
+            throw new EOFException("Truncated row group in table " + tableName);
+        }
+        int checksum = in.readInt();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch in table " + tableName);
+        }
+        Object[][] values = new Object[columns.size()][];
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        PayloadInput payloadIn = new PayloadInput(buffer);
+        for (int c = 0; c < columns.size(); c++) {
+            values[c] = decodeColumn(columns.get(c).getKind(), payloadIn, buffer, rows);
+        }
+        List<Object[]> result = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            Object[] row = new Object[columns.size()];
+            for (int c = 0; c < columns.size(); c++) {
+                row[c] = values[c][r];
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    private boolean nextRowGroupHeader() throws IOException {
+        if (!inTable) {
+            return false;
+        }
+        int marker = in.read();
+        if (marker == BinaryFormat.END_TABLE) {
+            inTable = false;
+            return false;
+        }
+        if (marker != BinaryFormat.ROW_GROUP) {
+            throw new IOException("Corrupted binary dump in table " + tableName);
+        }
+        return true;
+    }
+
+    private static Object[] decodeColumn(BinaryColumn.Kind kind, PayloadInput in, ByteBuffer buffer, int rows)
+            throws IOException {
+        boolean[] nulls = new boolean[rows];
+        if (buffer.get() != 0) {
+            byte[] bitmap = new byte[(rows + 7) / 8];
+            buffer.get(bitmap);
+            for (int r = 0; r < rows; r++) {
+                nulls[r] = (bitmap[r >> 3] & (1 << (r & 7))) != 0;
+            }
+        }
+        Object[] values = new Object[rows];
+        switch (kind) {
+            case LONG: {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        previous += BinaryFormat.unzigzag(BinaryFormat.readVarLong(in));
+                        values[r] = previous;
+                    }
+                }
+                break;
+            }
+            case DOUBLE:
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        values[r] = Double.longBitsToDouble(buffer.getLong());
+                    }
+                }
+                break;
+            case DECIMAL:
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        values[r] = new BigDecimal(BinaryFormat.readString(in));
+                    }
+                }
+                break;
+            case BOOLEAN: {
+                byte[] bits = new byte[(rows + 7) / 8];
+                buffer.get(bits);
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        values[r] = (bits[r >> 3] & (1 << (r & 7))) != 0;
+                    }
+                }
+                break;
+            }
+            case DATE: {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        previous += BinaryFormat.unzigzag(BinaryFormat.readVarLong(in));
+                        values[r] = java.sql.Date.valueOf(LocalDate.ofEpochDay(previous));
+                    }
+                }
+                break;
+            }
+            case TIME:
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        values[r] = Time.valueOf(LocalTime.ofNanoOfDay(BinaryFormat.readVarLong(in)));
+                    }
+                }
+                break;
+            case TIMESTAMP: {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        previous += BinaryFormat.unzigzag(BinaryFormat.readVarLong(in));
+                        int subMillis = (int) BinaryFormat.readVarLong(in);
+                        Timestamp timestamp = new Timestamp(previous);
+                        timestamp.setNanos(timestamp.getNanos() + subMillis);
+                        values[r] = timestamp;
+                    }
+                }
+                break;
+            }
+            case BYTES:
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        values[r] = BinaryFormat.readBytes(in);
+                    }
+                }
+                break;
+            default:
+                if (buffer.get() == BinaryFormat.DICTIONARY) {
+                    String[] entries = new String[(int) BinaryFormat.readVarLong(in)];
+                    for (int i = 0; i < entries.length; i++) {
+                        entries[i] = BinaryFormat.readString(in);
+                    }
+                    for (int r = 0; r < rows; r++) {
+                        if (!nulls[r]) {
+                            values[r] = entries[(int) BinaryFormat.readVarLong(in)];
+                        }
+                    }
+                } else {
+                    for (int r = 0; r < rows; r++) {
+                        if (!nulls[r]) {
+                            values[r] = BinaryFormat.readString(in);
+                        }
+                    }
+                }
+                break;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * The payload of a row group seen as a stream, for the varint readers.
+     */
+    private static class PayloadInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        PayloadInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.udb.model.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The BinaryDumpWriter class writes tables in the native binary dump format.
+ * Rows are buffered into row groups. Every column of a row group is encoded by
+ * type: varint deltas for integers, dates and timestamps, raw bytes for
+ * floating-point numbers and BLOBs, a dictionary for low-cardinality strings,
+ * and a null bitmap. Every row group carries a CRC32 checksum.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class BinaryDumpWriter implements Closeable {
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+    private final Payload payload = new Payload();
+    private List<BinaryColumn> columns;
+    // Values of the current row group, by column
+    private Object[][] values;
+    private int rows;
+
+    public BinaryDumpWriter(OutputStream out) throws IOException {
+        this(out, 4096);
+    }
+
+    public BinaryDumpWriter(OutputStream out, int rowGroupSize) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.rowGroupSize = rowGroupSize;
+        this.out.write(BinaryFormat.MAGIC);
+        this.out.writeByte(BinaryFormat.VERSION);
+    }
+
+    /**
+     * Start a table. Rows written after this belong to it.
+     *
+     * @param name
+     * @param dropSql   the statement dropping the table, or empty
+     * @param createSql the statement creating the table, or empty
+     * @param columns
+     * @throws IOException
+     */
+    public void startTable(String name, String dropSql, String createSql, List<BinaryColumn> columns)
+            throws IOException {
+        this.columns = columns;
+        this.values = new Object[columns.size()][rowGroupSize];
+        this.rows = 0;
+        out.writeByte(BinaryFormat.TABLE);
+        BinaryFormat.writeString(out, name);
+        BinaryFormat.writeString(out, dropSql == null ? "" : dropSql);
+        BinaryFormat.writeString(out, createSql == null ? "" : createSql);
+        BinaryFormat.writeVarLong(out, columns.size());
+        for (BinaryColumn column : columns) {
+            BinaryFormat.writeString(out, column.getName());
+            BinaryFormat.writeVarLong(out, BinaryFormat.zigzag(column.getJdbcType()));
+            BinaryFormat.writeString(out, column.getTypeName() == null ? "" : column.getTypeName());
+            out.writeByte(column.getKind().ordinal());
+        }
+    }
+
+    /**
+     * Add a row to the current table.
+     *
+     * @param row the values, in the order of the columns
+     * @throws IOException
+     */
+    public void writeRow(Object[] row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            values[i][rows] = row[i];
+        }
+        rows++;
+        if (rows >= rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    /**
+     * Write the last row group and close the current table.
+     *
+     * @throws IOException
+     */
+    public void endTable() throws IOException {
+        flushRowGroup();
+        out.writeByte(BinaryFormat.END_TABLE);
+        columns = null;
+        values = null;
+    }
+
+    private void flushRowGroup() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        payload.reset();
+        try {
+            for (int c = 0; c < columns.size(); c++) {
+                encodeColumn(columns.get(c).getKind(), values[c]);
+                Arrays.fill(values[c], 0, rows, null);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.buffer(), 0, payload.size());
+        out.writeByte(BinaryFormat.ROW_GROUP);
+        BinaryFormat.writeVarLong(out, rows);
+        BinaryFormat.writeVarLong(out, payload.size());
+        out.write(payload.buffer(), 0, payload.size());
+        out.writeInt((int) crc.getValue());
+        rows = 0;
+    }
+
+    private void encodeColumn(BinaryColumn.Kind kind, Object[] column) throws IOException, SQLException {
+        // Null bitmap
+        boolean hasNull = false;
+        for (int r = 0; r < rows; r++) {
+            if (column[r] == null) {
+                hasNull = true;
+                break;
+            }
+        }
+        payload.write(hasNull ? 1 : 0);
+        if (hasNull) {
+            byte[] bitmap = new byte[(rows + 7) / 8];
+            for (int r = 0; r < rows; r++) {
+                if (column[r] == null) {
+                    bitmap[r >> 3] |= 1 << (r & 7);
+                }
+            }
+            payload.write(bitmap);
+        }
+        switch (kind) {
+            case LONG: {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        long value = toLong(column[r]);
+                        BinaryFormat.writeVarLong(payload, BinaryFormat.zigzag(value - previous));
+                        previous = value;
+                    }
+                }
+                break;
+            }
+            case DOUBLE:
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        double value = column[r] instanceof Number ? ((Number) column[r]).doubleValue()
+                                : Double.parseDouble(column[r].toString());
+                        payload.writeLong(Double.doubleToRawLongBits(value));
+                    }
+                }
+                break;
+            case DECIMAL:
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        BinaryFormat.writeString(payload, column[r] instanceof BigDecimal
+                                ? ((BigDecimal) column[r]).toPlainString()
+                                : column[r].toString());
+                    }
+                }
+                break;
+            case BOOLEAN: {
+                byte[] bits = new byte[(rows + 7) / 8];
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null && toBoolean(column[r])) {
+                        bits[r >> 3] |= 1 << (r & 7);
+                    }
+                }
+                payload.write(bits);
+                break;
+            }
+            case DATE: {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        long value = toLocalDate(column[r]).toEpochDay();
+                        BinaryFormat.writeVarLong(payload, BinaryFormat.zigzag(value - previous));
+                        previous = value;
+                    }
+                }
+                break;
+            }
+            case TIME:
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        BinaryFormat.writeVarLong(payload, toLocalTime(column[r]).toNanoOfDay());
+                    }
+                }
+                break;
+            case TIMESTAMP: {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        Timestamp timestamp = toTimestamp(column[r]);
+                        long millis = timestamp.getTime();
+                        BinaryFormat.writeVarLong(payload, BinaryFormat.zigzag(millis - previous));
+                        BinaryFormat.writeVarLong(payload, timestamp.getNanos() % 1000000);
+                        previous = millis;
+                    }
+                }
+                break;
+            }
+            case BYTES:
+                for (int r = 0; r < rows; r++) {
+                    if (column[r] != null) {
+                        BinaryFormat.writeBytes(payload, toBytes(column[r]));
+                    }
+                }
+                break;
+            default:
+                encodeStrings(column);
+                break;
+        }
+    }
+
+    /**
+     * Strings are written with a dictionary when there are at most a quarter as
+     * many distinct values as values.
+     */
+    private void encodeStrings(Object[] column) throws IOException, SQLException {
+        String[] strings = new String[rows];
+        Map<String, Integer> dictionary = new HashMap<>();
+        int count = 0;
+        for (int r = 0; r < rows; r++) {
+            if (column[r] != null) {
+                count++;
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            if (column[r] != null) {
+                strings[r] = toText(column[r]);
+                dictionary.putIfAbsent(strings[r], dictionary.size());
+                // Too many distinct values, stop building the dictionary
+                if (dictionary.size() * 4 > count) {
+                    dictionary = null;
+                    break;
+                }
+            }
+        }
+        if (dictionary != null && dictionary.size() * 4 <= count) {
+            for (int r = 0; r < rows; r++) {
+                if (column[r] != null && strings[r] == null) {
+                    strings[r] = toText(column[r]);
+                }
+            }
+            String[] entries = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            payload.write(BinaryFormat.DICTIONARY);
+            BinaryFormat.writeVarLong(payload, entries.length);
+            for (String entry : entries) {
+                BinaryFormat.writeString(payload, entry);
+            }
+            for (int r = 0; r < rows; r++) {
+                if (strings[r] != null) {
+                    BinaryFormat.writeVarLong(payload, dictionary.get(strings[r]));
+                }
+            }
+        } else {
+            payload.write(BinaryFormat.PLAIN);
+            for (int r = 0; r < rows; r++) {
+                if (column[r] != null) {
+                    BinaryFormat.writeString(payload, strings[r] != null ? strings[r] : toText(column[r]));
+                }
+            }
+        }
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return Long.parseLong(value.toString());
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue() != 0;
+        } else if (value instanceof byte[]) {
+            for (byte b : (byte[]) value) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String text = value.toString();
+        return text.equals("1") || text.equalsIgnoreCase("true");
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        } else if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        } else if (value instanceof java.util.Date) {
+            return new java.sql.Date(((java.util.Date) value).getTime()).toLocalDate();
+        }
+        return LocalDate.parse(value.toString());
+    }
+
+    private static LocalTime toLocalTime(Object value) {
+        if (value instanceof java.sql.Time) {
+            return ((java.sql.Time) value).toLocalTime();
+        } else if (value instanceof LocalTime) {
+            return (LocalTime) value;
+        }
+        return LocalTime.parse(value.toString());
+    }
+
+    private static Timestamp toTimestamp(Object value) {
+        if (value instanceof Timestamp) {
+            return (Timestamp) value;
+        } else if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value);
+        } else if (value instanceof OffsetDateTime) {
+            return Timestamp.from(((OffsetDateTime) value).toInstant());
+        } else if (value instanceof java.util.Date) {
+            return new Timestamp(((java.util.Date) value).getTime());
+        }
+        return Timestamp.valueOf(value.toString());
+    }
+
+    private static byte[] toBytes(Object value) throws SQLException {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            return blob.getBytes(1, (int) blob.length());
+        }
+        return value.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    private static String toText(Object value) throws SQLException {
+        if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        }
+        return value.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (columns != null) {
+            endTable();
+        }
+        out.flush();
+        out.close();
+    }
+
+    /**
+     * The payload of a row group, reused from one row group to the next.
+     */
+    private static class Payload extends ByteArrayOutputStream {
+        Payload() {
+            super(64 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+    }
+}
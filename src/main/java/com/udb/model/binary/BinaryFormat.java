@@ -0,0 +1,81 @@
+package com.udb.model.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and primitive encodings shared by BinaryDumpWriter and
+ * BinaryDumpReader.
+ *
+ * A file is the magic "UDBB" and a version byte, followed by tables. A table
+ * is a 'T' marker, its name, its DROP and CREATE statements and its columns,
+ * followed by row groups and an 'E' marker. A row group is a 'G' marker, the
+ * number of rows, the length of the payload, the payload and the CRC32 of the
+ * payload. The payload holds the
+ * columns one after the other, each with its null bitmap and its values.
+ */
+final class BinaryFormat {
+    static final byte[] MAGIC = { 'U', 'D', 'B', 'B' };
+    static final int VERSION = 1;
+    static final int TABLE = 'T';
+    static final int ROW_GROUP = 'G';
+    static final int END_TABLE = 'E';
+    // String encodings inside a row group
+    static final int PLAIN = 0;
+    static final int DICTIONARY = 1;
+
+    private BinaryFormat() {
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(InputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        return in.readNBytes(length);
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(InputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+}
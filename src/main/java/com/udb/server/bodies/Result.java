@@ -10,6 +10,7 @@ import java.util.Date;
  * startTime: task start time
  * endTime: task end time
  * message: task message
+ * detail: task specific status, e.g. the progress of each table
  *
  * @author Udb
  * @version 1.0
@@ -24,6 +25,7 @@ public class Result {
     private String id;
     private String message;
     private double progress;
+    private Object detail;
     
 
     public static Result success() {
@@ -73,6 +75,10 @@ public class Result {
         this.progress = progress;
         return this;
     }
+    public Result detail(Object detail) {
+        this.detail = detail;
+        return this;
+    }
 
 
     public String getId() {
@@ -120,4 +126,10 @@ public class Result {
     public void setProgress(double progress) {
         this.progress = progress;
     }
+    public Object getDetail() {
+        return detail;
+    }
+    public void setDetail(Object detail) {
+        this.detail = detail;
+    }
 }
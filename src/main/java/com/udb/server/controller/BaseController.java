@@ -1,19 +1,25 @@
 package com.udb.server.controller;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.alibaba.fastjson2.JSON;
-import com.udb.model.MysqlToCsvExporter;
-import com.udb.model.MysqlToJsonExporter;
-import com.udb.model.MysqlToSqlExporter;
-import com.udb.model.MysqlToXlsxExporter;
 import com.udb.server.bodies.ExeSqlBody;
 import com.udb.server.bodies.ExportDataBody;
 import com.udb.server.bodies.Result;
 import com.udb.server.service.BaseService;
+import com.udb.server.service.StartupMetrics;
+import com.udb.server.service.TaskService;
+import com.udb.server.service.wire.ResultWriter;
+
+import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * The BaseController class is the controller of the application.
@@ -42,40 +48,64 @@ public class BaseController {
         }
     }
 
+    /**
+     * Get the startup times of the server, to the first query
+     */
+    @RequestMapping("/startup")
+    @ResponseBody
+    public Result startup() {
+        return Result.success(StartupMetrics.get());
+    }
+
     /**
      * Execute SQL statements，synchronously
+     * The result is written as binary frames when the client accepts them.
      * 
      * @param body
      * @return
+     * @throws IOException
      */
     @RequestMapping("/executeSql")
     @ResponseBody
-    public Result execSql(@RequestBody ExeSqlBody body) {
+    public Result execSql(@RequestBody ExeSqlBody body,
+            @RequestHeader(value = "Accept", required = false) String accept, HttpServletResponse response)
+            throws IOException {
         System.out.println(body.getSql());
+        Result rs;
         try {
-            return BaseService.executeSql(body);
+            rs = BaseService.executeSql(body);
         } catch (Exception e) {
-            return Result.error(e.getMessage());
+            rs = Result.error(e.getMessage());
+        }
+        if (!ResultWriter.acceptsFrames(accept)) {
+            return rs;
         }
+        ResultWriter writer = ResultWriter.of(accept, response);
+        try {
+            writer.write(rs, null);
+        } finally {
+            writer.close();
+        }
+        return null;
     }
 
+    /**
+     * Export data to files as a task of type export, without holding the
+     * request thread. The progress, the rows and bytes written and the result
+     * are read through /api/task/result, and /api/task/stop cancels it.
+     *
+     * @param body
+     * @return the id of the task
+     */
     @RequestMapping("/exportData")
     @ResponseBody
     public Result exportData(@RequestBody ExportDataBody body) {
         System.out.println(JSON.toJSONString(body));
-        try {
-            if (body.getFormat().equals("csv")) {
-                MysqlToCsvExporter.exportToCsv(body.getData(), body.getPath());
-            } else if (body.getFormat().equals("json")) {
-                MysqlToJsonExporter.exportToJson(body.getData(), body.getPath());
-            } else if (body.getFormat().equals("excel")) {
-                MysqlToXlsxExporter.exportToXlsx(body.getData(), body.getPath());
-            } else if (body.getFormat().equals("sql")) {
-                MysqlToSqlExporter.exportToSql(body.getData(), body.getPath());
-            }
-            return Result.success("success");
-        } catch (Exception e) {
-            return Result.error(e.getMessage());
-        }
+        Map<String, Object> task = new HashMap<>();
+        task.put("type", "export");
+        task.put("data", body.getData());
+        task.put("path", body.getPath());
+        task.put("format", body.getFormat());
+        return TaskService.run(task);
     }
 }
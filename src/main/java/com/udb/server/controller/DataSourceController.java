@@ -0,0 +1,61 @@
+package com.udb.server.controller;
+
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.udb.server.bodies.Result;
+import com.udb.server.service.DataSourceService;
+
+/**
+ * The DataSourceController class registers the datasources.
+ * A registered datasource is sent as its handle in the datasource field of the
+ * other requests, its pool is opened on first use, or at startup if it is hot.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/api/datasource")
+public class DataSourceController {
+
+    /**
+     * Register a datasource and get its handle
+     */
+    @RequestMapping("/register")
+    @ResponseBody
+    public Result register(@RequestBody Map<String, Object> body) {
+        return DataSourceService.register(body);
+    }
+
+    /**
+     * Get the registered datasources
+     */
+    @RequestMapping("/list")
+    @ResponseBody
+    public Result list() {
+        return DataSourceService.list();
+    }
+
+    /**
+     * Remove a registered datasource
+     */
+    @RequestMapping("/remove")
+    @ResponseBody
+    public Result remove(@RequestBody Map<String, Object> body) {
+        return DataSourceService.remove(body);
+    }
+
+    /**
+     * Open all the connections of a registered datasource
+     */
+    @RequestMapping("/warm")
+    @ResponseBody
+    public Result warm(@RequestBody Map<String, Object> body) {
+        return DataSourceService.warm(body);
+    }
+}
@@ -0,0 +1,61 @@
+package com.udb.server.controller;
+
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.udb.server.bodies.Result;
+import com.udb.server.service.MetaService;
+
+/**
+ * The MetaController class serves the schema of the datasources.
+ * The schema is cached per datasource and loaded again after
+ * /api/meta/invalidate or after a DDL statement run by the server.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+@RestController
+@RequestMapping("/api/meta")
+public class MetaController {
+
+    /**
+     * Get the tables and views of a datasource
+     */
+    @RequestMapping("/tables")
+    @ResponseBody
+    public Result tables(@RequestBody Map<String, Object> body) {
+        return MetaService.tables(body);
+    }
+
+    /**
+     * Get the columns and the primary key of a table
+     */
+    @RequestMapping("/table")
+    @ResponseBody
+    public Result table(@RequestBody Map<String, Object> body) {
+        return MetaService.table(body);
+    }
+
+    /**
+     * Get the DDL of a table
+     */
+    @RequestMapping("/ddl")
+    @ResponseBody
+    public Result ddl(@RequestBody Map<String, Object> body) {
+        return MetaService.ddl(body);
+    }
+
+    /**
+     * Drop the cached schema of a datasource
+     */
+    @RequestMapping("/invalidate")
+    @ResponseBody
+    public Result invalidate(@RequestBody Map<String, Object> body) {
+        return MetaService.invalidate(body);
+    }
+}
@@ -1,8 +1,12 @@
 package com.udb.server.controller;
 
+import java.io.IOException;
 import java.util.Map;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -10,6 +14,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.udb.server.bodies.Result;
 import com.udb.server.bodies.TaskBody;
 import com.udb.server.service.TaskService;
+import com.udb.server.service.wire.ResultWriter;
 
 /**
  * The BaseController class is the controller of the application.
@@ -43,14 +48,14 @@ public class TaskController {
 
     /**
      *
-     * Get the result of a task
+     * Get the result of a task, as JSON or as the binary frames of
+     * FrameResultWriter when the client accepts them
      * 
      */
     @RequestMapping("/result")
-    @ResponseBody
-    public Result result(@RequestBody TaskBody body) {
-        return TaskService.result(body);
-
+    public void result(@RequestBody TaskBody body, @RequestHeader(value = "Accept", required = false) String accept,
+            HttpServletResponse response) throws IOException {
+        TaskService.result(body, ResultWriter.of(accept, response));
     }
 
     /**
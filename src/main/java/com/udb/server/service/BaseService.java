@@ -1,13 +1,16 @@
 package com.udb.server.service;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.udb.server.bodies.ExeSqlBody;
 import com.udb.server.bodies.Result;
+import com.udb.server.service.jdbc.MetadataCache;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
@@ -28,18 +31,107 @@ import com.zaxxer.hikari.HikariDataSource;
  * 
  */
 public class BaseService {
-    private static Map<String, HikariDataSource> dataSourceMap;
+    private static final Map<String, HikariDataSource> dataSourceMap = new ConcurrentHashMap<>();
+    private static final int DEFAULT_POOL_SIZE = 2;
+    // Worker connections the bulk tasks of a datasource may hold at once,
+    // outside of its pool
+    private static final int DEFAULT_WORKER_CONNECTIONS = 8;
+    private static final Map<String, Integer> workerLimits = new ConcurrentHashMap<>();
 
+    /**
+     * This method returns the pool of a datasource by its key, or by its handle
+     * in the datasource catalog, opening the pool of a registered datasource on
+     * first use.
+     *
+     * @param dataSourceName
+     * @return null if the datasource has no pool and is not registered
+     */
     public static HikariDataSource getDataSource(String dataSourceName) {
-        return BaseService.dataSourceMap.get(dataSourceName);
+        HikariDataSource dataSource = BaseService.dataSourceMap.get(dataSourceName);
+        if (dataSource == null) {
+            JSONObject datasourceJson = DataSourceCatalog.get(dataSourceName);
+            if (datasourceJson != null) {
+                return getDataSource(datasourceJson);
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * Parse the datasource of a request, either its definition in JSON or the
+     * handle it was registered with.
+     *
+     * @param datasource
+     * @return null if the handle is not registered
+     */
+    public static JSONObject parseDatasource(String datasource) {
+        String trimmed = datasource.trim();
+        if (trimmed.startsWith("{")) {
+            return JSONObject.parseObject(trimmed);
+        }
+        return DataSourceCatalog.get(trimmed);
+    }
+
+    /**
+     * The key of a datasource in the pool map, its name and database.
+     *
+     * @param datasourceJson
+     * @return
+     */
+    public static String getDataSourceKey(JSONObject datasourceJson) {
+        return datasourceJson.getString("name") + ":" + datasourceJson.getString("database");
+    }
+
+    /**
+     * The number of connections a datasource can serve at once, the size of its
+     * pool or of the pool it will get.
+     *
+     * @param key
+     * @return
+     */
+    public static int getPoolSize(String key) {
+        HikariDataSource dataSource = dataSourceMap.get(key);
+        return dataSource == null ? DEFAULT_POOL_SIZE : dataSource.getMaximumPoolSize();
+    }
+
+    /**
+     * The number of worker connections the bulk tasks of a datasource may open
+     * at once with {@link #openConnection(JSONObject)}, maxWorkerConnections of
+     * its definition or 8. The limit is separate from the size of the pool.
+     *
+     * @param datasourceJson
+     * @return
+     */
+    public static int getWorkerLimit(JSONObject datasourceJson) {
+        Integer limit = datasourceJson.getInteger("maxWorkerConnections");
+        int workers = limit == null || limit < 1 ? DEFAULT_WORKER_CONNECTIONS : limit;
+        workerLimits.put(getDataSourceKey(datasourceJson), workers);
+        return workers;
+    }
+
+    /**
+     * The worker limit of a datasource by its key.
+     *
+     * @param key
+     * @return
+     */
+    public static int getWorkerLimit(String key) {
+        return workerLimits.getOrDefault(key, DEFAULT_WORKER_CONNECTIONS);
     }
 
+    /**
+     * This method creates the pool of a datasource. The connections are opened
+     * on demand, up to the size of the pool.
+     *
+     * @param datasourceJson
+     * @return
+     */
     public static HikariDataSource initDataSource(JSONObject datasourceJson) {
 
         System.out.println("initDataSource");
-        System.out.println(datasourceJson.toJSONString());
+        System.out.println(getDataSourceKey(datasourceJson) + " " + datasourceJson.getString("driverJdbcUrl"));
 
-        String key = datasourceJson.getString("name") + ":" + datasourceJson.getString("database");
+        String key = getDataSourceKey(datasourceJson);
         String username = datasourceJson.getString("username");
         String password = datasourceJson.getString("password");
         String jdbcUrl = datasourceJson.getString("driverJdbcUrl");
@@ -54,14 +146,51 @@ public class BaseService {
         config.setMaxLifetime(1000 * 60);
         config.setIdleTimeout(1000 * 60);
         // set the minimum number of connections to 2
-        config.setMaximumPoolSize(2);
+        config.setMaximumPoolSize(DEFAULT_POOL_SIZE);
         config.setConnectionTestQuery("SELECT 1");
 
         config.setPoolName(key);
-        HikariDataSource ds = new com.zaxxer.hikari.HikariDataSource(config);
-        dataSourceMap = new java.util.HashMap<>();
-        dataSourceMap.put(key, ds);
-        return ds;
+        return new com.zaxxer.hikari.HikariDataSource(config);
+    }
+
+    /**
+     * This method opens the pool of a datasource with all its connections, and
+     * validates each of them.
+     *
+     * @param datasourceJson
+     * @return the number of connections opened
+     * @throws SQLException
+     */
+    public static int warmDataSource(JSONObject datasourceJson) throws SQLException {
+        HikariDataSource dataSource = getDataSource(datasourceJson);
+        List<Connection> connections = new java.util.ArrayList<>();
+        try {
+            for (int i = 0; i < dataSource.getMaximumPoolSize(); i++) {
+                Connection conn = dataSource.getConnection();
+                connections.add(conn);
+                if (!conn.isValid(5)) {
+                    throw new SQLException("Connection is not valid");
+                }
+            }
+        } finally {
+            for (Connection conn : connections) {
+                conn.close();
+            }
+        }
+        return connections.size();
+    }
+
+    /**
+     * This method closes the pool of a datasource, if it has one.
+     *
+     * @param key
+     */
+    public static void closeDataSource(String key) {
+        HikariDataSource dataSource = dataSourceMap.remove(key);
+        if (dataSource != null) {
+            dataSource.close();
+            MetadataCache.invalidate(key);
+        }
     }
 
     /**
@@ -84,22 +213,35 @@ public class BaseService {
     }
 
     /**
-     * This method returns a data source.
+     * This method returns the pool of a data source, created on first use.
      * 
      * @param datasourceJson
      * @return
      */
     public static HikariDataSource getDataSource(JSONObject datasourceJson) {
-        String key = datasourceJson.getString("name") + ":" + datasourceJson.getString("database");
-        if (BaseService.dataSourceMap == null) {
-            return initDataSource(datasourceJson);
+        if (datasourceJson == null) {
+            return null;
         }
-        HikariDataSource dataSource = BaseService.dataSourceMap.get(key);
-        if (dataSource != null) {
-            return dataSource;
-        } else {
-            return initDataSource(datasourceJson);
+        // One pool per key, even when the first requests come at once
+        return dataSourceMap.computeIfAbsent(getDataSourceKey(datasourceJson), k -> initDataSource(datasourceJson));
+    }
+
+    /**
+     * This method opens a dedicated connection outside of the pool.
+     * Bulk tasks use it for their worker connections, so that loading data in
+     * parallel does not exhaust the small interactive pool.
+     * 
+     * @param datasourceJson
+     * @return
+     * @throws Exception
+     */
+    public static Connection openConnection(JSONObject datasourceJson) throws Exception {
+        String driverMainClass = datasourceJson.getString("driverMainClass");
+        if (driverMainClass != null && !driverMainClass.isEmpty()) {
+            Class.forName(driverMainClass);
         }
+        return DriverManager.getConnection(datasourceJson.getString("driverJdbcUrl"),
+                datasourceJson.getString("username"), datasourceJson.getString("password"));
     }
 
     /**
@@ -112,7 +254,7 @@ public class BaseService {
      * @throws Exception
      */
     public static Result executeSql(ExeSqlBody body) throws Exception {
-        JSONObject datasourceJson = JSONObject.parseObject(body.getDatasource());
+        JSONObject datasourceJson = parseDatasource(body.getDatasource());
         HikariDataSource dataSource = getDataSource(datasourceJson);
         if (dataSource == null) {
             return new Result(830).message("Data source does not exist");
@@ -120,8 +262,12 @@ public class BaseService {
         Connection conn = null;
         try {
             conn = dataSource.getConnection();
+            // Every row is returned, so the result is not streamed
             java.sql.Statement stmt = conn.createStatement();
             boolean isResult = stmt.execute(body.getSql());
+            if (MetadataCache.isDdl(body.getSql())) {
+                MetadataCache.invalidate(getDataSourceKey(datasourceJson));
+            }
             java.util.List<Map<String, Object>> columns = new java.util.ArrayList<>();
             java.util.List<Map<String, Object>> rows = new java.util.ArrayList<>();
             if (isResult) {
@@ -156,6 +302,7 @@ public class BaseService {
             Map<String, Object> result = new java.util.HashMap<>();
             result.put("columns", columns);
             result.put("rows", rows);
+            StartupMetrics.query();
             return Result.success(result);
         } catch (Exception e) {
             if (conn != null) {
@@ -3,9 +3,13 @@ package com.udb.server.service;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.udb.server.bodies.Result;
 
@@ -28,6 +32,10 @@ public class ComThread extends Thread {
     }
 
     public int getStatus() {
+        // A task ended by a limit reports it, whatever error the cancelled statement raised
+        if (limitMessage != null && endTime != null) {
+            return 860;
+        }
         return status;
     }
 
@@ -39,6 +47,46 @@ public class ComThread extends Thread {
         return "";
     }
 
+    /**
+     * The key of the datasource the task works on, the scheduler runs at most as
+     * many tasks per datasource as its pool has connections.
+     *
+     * @return
+     */
+    public String getDatasourceKey() {
+        return "";
+    }
+
+    /**
+     * The worker connections the task opens outside of the pools, by the key of
+     * their datasource. The scheduler counts them against the worker limit of
+     * every datasource.
+     *
+     * @return
+     */
+    public Map<String, Integer> getWorkerConnections() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public final void run() {
+        try {
+            execute();
+        } finally {
+            // An open transaction keeps its connection until it is committed or
+            // rolled back
+            if (!isTransaction || isCommitOrRollback) {
+                TaskScheduler.release(this);
+            }
+        }
+    }
+
+    /**
+     * The work of the task, run once the scheduler has admitted it.
+     */
+    protected void execute() {
+    }
+
     protected Connection conn;
     protected Statement stmt;
 
@@ -61,6 +109,20 @@ public class ComThread extends Thread {
         return results;
     }
 
+    // Bytes held by the results that are not read yet, counted by the task
+    protected volatile long retainedBytes;
+
+    /**
+     * Estimate the memory held by the results of the task. Tasks that queue
+     * large results count them in retainedBytes, the others only queue small
+     * summaries.
+     *
+     * @return
+     */
+    public long getRetainedBytes() {
+        return retainedBytes + (results == null ? 0 : results.size() * 256L);
+    }
+
     protected String message;
 
     /**
@@ -69,6 +131,9 @@ public class ComThread extends Thread {
      * @return
      */
     public String getMessage() {
+        if (limitMessage != null && endTime != null) {
+            return limitMessage;
+        }
         return message;
     }
 
@@ -110,8 +175,136 @@ public class ComThread extends Thread {
         return progress;
     }
 
+    // Task specific status, such as the progress of each table
+    protected final Map<String, Object> detail = new ConcurrentHashMap<>();
+
+    public Map<String, Object> getDetail() {
+        return detail;
+    }
+
+    // Extra connections opened by bulk tasks, closed together with the task
+    protected final List<Connection> workerConns = new CopyOnWriteArrayList<>();
+
+    private void closeWorkerConns() {
+        for (Connection workerConn : workerConns) {
+            try {
+                workerConn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        workerConns.clear();
+    }
+
+    // Limits of the task, 0 for none
+    protected long maxRuntime;
+    protected long maxRows;
+    protected long maxBytes;
+    private volatile String limitMessage;
+
+    /**
+     * Read the limits of the task from its body: maxRuntime in seconds, maxRows
+     * and maxBytes of the rows read or written.
+     *
+     * @param body
+     */
+    public void applyLimits(Map<String, Object> body) {
+        if (body.containsKey("maxRuntime")) {
+            this.maxRuntime = Long.parseLong(body.get("maxRuntime").toString()) * 1000;
+        }
+        if (body.containsKey("maxRows")) {
+            this.maxRows = Long.parseLong(body.get("maxRows").toString());
+        }
+        if (body.containsKey("maxBytes")) {
+            this.maxBytes = Long.parseLong(body.get("maxBytes").toString());
+        }
+    }
+
+    public boolean hasRuntimeLimit() {
+        return maxRuntime > 0;
+    }
+
+    public boolean isLimitExceeded() {
+        return limitMessage != null;
+    }
+
+    /**
+     * Make a statement the current statement of the task, so that it can be
+     * cancelled, and give it the time left before the runtime limit.
+     *
+     * @param statement
+     * @throws SQLException
+     */
+    protected void watch(Statement statement) throws SQLException {
+        this.stmt = statement;
+        if (maxRuntime > 0 && startTime != null) {
+            long left = maxRuntime - (System.currentTimeMillis() - startTime.getTime());
+            statement.setQueryTimeout((int) Math.max(1, (left + 999) / 1000));
+        }
+    }
+
+    /**
+     * Check the rows and bytes of the task against its limits.
+     *
+     * @param rows  the rows read or written so far
+     * @param bytes the bytes read or written so far
+     * @throws SQLException if a limit is exceeded
+     */
+    protected void checkLimits(long rows, long bytes) throws SQLException {
+        if (maxRows > 0 && rows > maxRows) {
+            exceedLimit("Row limit exceeded:" + maxRows);
+        } else if (maxBytes > 0 && bytes > maxBytes) {
+            exceedLimit("Byte limit exceeded:" + maxBytes);
+        }
+        if (limitMessage != null) {
+            throw new SQLException(limitMessage);
+        }
+    }
+
+    /**
+     * Called by the watchdog, end the task once it has run for too long.
+     */
+    public void checkRuntime() {
+        if (maxRuntime > 0 && startTime != null && endTime == null
+                && System.currentTimeMillis() - startTime.getTime() > maxRuntime) {
+            exceedLimit("Runtime limit exceeded:" + maxRuntime / 1000 + "s");
+            cancelStatement();
+            this.interrupt();
+        }
+    }
+
+    private void exceedLimit(String limit) {
+        if (limitMessage == null) {
+            System.out.println("Task " + sessionId + " " + limit);
+            limitMessage = limit;
+        }
+    }
+
+    /**
+     * Ask the database to stop the running statement, so that it does not keep
+     * working after the task has ended.
+     */
+    protected void cancelStatement() {
+        Statement current = this.stmt;
+        if (current != null) {
+            try {
+                current.cancel();
+            } catch (SQLException e) {
+                // The statement is already closed or the driver cannot cancel it
+            }
+        }
+    }
+
     public Result end() {
+        // A task still waiting in the queue is simply dropped
+        if (TaskScheduler.cancel(this)) {
+            message = "Task has been cancelled before it started";
+            endTime = new Date();
+            status = 200;
+            return Result.success().message("Task has been terminated");
+        }
         // Forcefully end the connection and close the resources
+        cancelStatement();
         try {
             if (conn != null) {
                 if (isTransaction && !isCommitOrRollback) {
@@ -122,7 +315,9 @@ public class ComThread extends Thread {
                 }
                 conn.close();
             }
+            closeWorkerConns();
             this.interrupt();
+            TaskScheduler.release(this);
             status = 200;
             return Result.success().message("Task has been terminated");
         } catch (SQLException e) {
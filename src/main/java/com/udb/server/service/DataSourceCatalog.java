@@ -0,0 +1,190 @@
+package com.udb.server.service;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * The DataSourceCatalog class keeps the registered datasources in
+ * ~/.udb/server/datasources.json, so that a request can name a datasource by
+ * its short handle instead of sending its definition.
+ * A datasource registered again, by name and database, keeps its handle.
+ * The pools of the hot datasources are opened at startup.
+ * The definitions hold the passwords in plain text, so the file can only be
+ * read by its owner.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class DataSourceCatalog {
+    private static final File FILE = new File(System.getProperty("user.home"), ".udb/server/datasources.json");
+    // handle -> definition, with hot
+    private static volatile Map<String, JSONObject> definitions;
+
+    /**
+     * Register a datasource.
+     *
+     * @param definition the datasource, as sent with the requests
+     * @param hot        whether its pool is opened at startup
+     * @return the handle of the datasource
+     * @throws Exception
+     */
+    public static synchronized String register(JSONObject definition, boolean hot) throws Exception {
+        String key = BaseService.getDataSourceKey(definition);
+        String handle = null;
+        for (Map.Entry<String, JSONObject> entry : load().entrySet()) {
+            if (BaseService.getDataSourceKey(entry.getValue()).equals(key)) {
+                handle = entry.getKey();
+                break;
+            }
+        }
+        JSONObject stored = new JSONObject(definition);
+        stored.remove("handle");
+        stored.put("hot", hot);
+        if (handle == null) {
+            do {
+                handle = UUID.randomUUID().toString().substring(0, 8);
+            } while (definitions.containsKey(handle));
+        } else if (!changed(definitions.get(handle), stored)) {
+            return handle;
+        } else {
+            // The url or the account changed, the next request opens a new pool
+            BaseService.closeDataSource(key);
+        }
+        definitions.put(handle, stored);
+        save();
+        System.out.println("Datasource registered:" + key + " as " + handle);
+        return handle;
+    }
+
+    /**
+     * The definition of a registered datasource.
+     *
+     * @param handle
+     * @return null if the handle is not registered
+     */
+    public static JSONObject get(String handle) {
+        return load().get(handle);
+    }
+
+    /**
+     * Remove a datasource and close its pool.
+     *
+     * @param handle
+     * @return false if the handle is not registered
+     * @throws Exception
+     */
+    public static synchronized boolean remove(String handle) throws Exception {
+        JSONObject definition = load().remove(handle);
+        if (definition == null) {
+            return false;
+        }
+        save();
+        BaseService.closeDataSource(BaseService.getDataSourceKey(definition));
+        return true;
+    }
+
+    /**
+     * The registered datasources, without their passwords.
+     *
+     * @return
+     */
+    public static List<Map<String, Object>> list() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> entry : load().entrySet()) {
+            JSONObject definition = new JSONObject(entry.getValue());
+            definition.remove("password");
+            definition.put("handle", entry.getKey());
+            definition.put("pooled", BaseService.getDataSource(BaseService.getDataSourceKey(definition)) != null);
+            list.add(definition);
+        }
+        return list;
+    }
+
+    /**
+     * Open the pools of the hot datasources, each with all its connections
+     * validated.
+     */
+    public static void prewarm() {
+        for (Map.Entry<String, JSONObject> entry : load().entrySet()) {
+            if (!entry.getValue().getBooleanValue("hot")) {
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                int connections = BaseService.warmDataSource(entry.getValue());
+                System.out.println("Datasource warmed:" + entry.getKey() + ", " + connections + " connections in "
+                        + (System.currentTimeMillis() - start) + "ms");
+            } catch (Exception e) {
+                // The pool is opened again on first use
+                System.out.println("Datasource warm up failed:" + entry.getKey() + ", " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean changed(JSONObject old, JSONObject definition) {
+        for (String field : new String[] { "driverJdbcUrl", "username", "password", "driverMainClass", "hot" }) {
+            if (!String.valueOf(old.get(field)).equals(String.valueOf(definition.get(field)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, JSONObject> load() {
+        Map<String, JSONObject> loaded = definitions;
+        return loaded != null ? loaded : read();
+    }
+
+    private static synchronized Map<String, JSONObject> read() {
+        if (definitions == null) {
+            Map<String, JSONObject> loaded = new ConcurrentHashMap<>();
+            if (FILE.exists()) {
+                try {
+                    JSONObject stored = JSONObject.parseObject(new String(Files.readAllBytes(FILE.toPath()),
+                            StandardCharsets.UTF_8));
+                    if (stored != null) {
+                        for (String handle : stored.keySet()) {
+                            loaded.put(handle, stored.getJSONObject(handle));
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            definitions = loaded;
+        }
+        return definitions;
+    }
+
+    private static void save() throws Exception {
+        JSONObject stored = new JSONObject(new java.util.TreeMap<>(definitions));
+        // Replace the file in one step, so that a crash leaves the old catalog
+        FILE.getParentFile().mkdirs();
+        File temp = new File(FILE.getPath() + ".tmp");
+        Files.deleteIfExists(temp.toPath());
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temp.toPath(),
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            temp.createNewFile();
+            temp.setReadable(false, false);
+            temp.setWritable(false, false);
+            temp.setReadable(true, true);
+            temp.setWritable(true, true);
+        }
+        Files.write(temp.toPath(), stored.toJSONString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
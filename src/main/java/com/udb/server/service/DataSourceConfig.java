@@ -0,0 +1,34 @@
+package com.udb.server.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+
+/**
+ * The DataSourceConfig class opens the pools of the hot datasources of the
+ * catalog once the server is started, unless udb.datasource.prewarm is false.
+ * It also records the time the server took to be ready.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+@Configuration
+@Lazy(false)
+public class DataSourceConfig {
+    private final boolean prewarm;
+
+    public DataSourceConfig(@Value("${udb.datasource.prewarm:true}") boolean prewarm) {
+        this.prewarm = prewarm;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        StartupMetrics.ready();
+        if (prewarm) {
+            DataSourceCatalog.prewarm();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.udb.server.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.server.bodies.Result;
+
+/**
+ * DataSourceService
+ * This class registers the datasources in the datasource catalog. A request
+ * can then send the handle of a registered datasource in place of its
+ * definition.
+ *
+ * @author udb
+ * @version 1.0
+ */
+public class DataSourceService {
+
+    /**
+     * This method registers a datasource, the definition in datasource and hot
+     * to open its pool at startup.
+     *
+     * @param body
+     * @return the handle of the datasource
+     */
+    public static Result register(Map<String, Object> body) {
+        if (!body.containsKey("datasource")) {
+            return new Result(500).message("datasource is required");
+        }
+        JSONObject datasourceJson = JSONObject.parseObject(body.get("datasource").toString());
+        boolean hot = body.containsKey("hot") && body.get("hot").toString().equals("true");
+        try {
+            Map<String, Object> data = new HashMap<>();
+            data.put("handle", DataSourceCatalog.register(datasourceJson, hot));
+            data.put("key", BaseService.getDataSourceKey(datasourceJson));
+            return Result.success(data);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * This method returns the registered datasources, without their passwords.
+     *
+     * @return
+     */
+    public static Result list() {
+        return Result.success(DataSourceCatalog.list());
+    }
+
+    /**
+     * This method removes a registered datasource and closes its pool.
+     *
+     * @param body
+     * @return
+     */
+    public static Result remove(Map<String, Object> body) {
+        if (!body.containsKey("handle")) {
+            return new Result(500).message("handle is required");
+        }
+        try {
+            if (!DataSourceCatalog.remove(body.get("handle").toString())) {
+                return new Result(830).message("Data source does not exist");
+            }
+            return Result.success().message("Data source removed");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * This method opens the pool of a registered datasource with all its
+     * connections.
+     *
+     * @param body
+     * @return the number of connections opened
+     */
+    public static Result warm(Map<String, Object> body) {
+        if (!body.containsKey("handle")) {
+            return new Result(500).message("handle is required");
+        }
+        JSONObject datasourceJson = DataSourceCatalog.get(body.get("handle").toString());
+        if (datasourceJson == null) {
+            return new Result(830).message("Data source does not exist");
+        }
+        try {
+            return Result.success(BaseService.warmDataSource(datasourceJson));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(e.getMessage());
+        }
+    }
+}
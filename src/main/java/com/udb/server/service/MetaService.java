@@ -0,0 +1,123 @@
+package com.udb.server.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.server.bodies.Result;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * MetaService
+ * This class serves the schema of the datasources from the metadata cache:
+ * tables, columns, primary keys and DDL.
+ * Every request carries the datasource, and the table for the table specific
+ * lookups.
+ *
+ * @author udb
+ * @version 1.0
+ */
+public class MetaService {
+
+    /**
+     * This method returns the tables and views of a datasource.
+     *
+     * @param body
+     * @return
+     */
+    public static Result tables(Map<String, Object> body) {
+        JSONObject datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
+        if (dataSource == null) {
+            return new Result(830).message("Data source does not exist");
+        }
+        try {
+            return Result.success(MetadataCache.getTables(BaseService.getDataSourceKey(datasourceJson), dataSource));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * This method returns the columns and the primary key of a table.
+     *
+     * @param body
+     * @return
+     */
+    public static Result table(Map<String, Object> body) {
+        if (!body.containsKey("table")) {
+            return new Result(500).message("table is required");
+        }
+        JSONObject datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
+        if (dataSource == null) {
+            return new Result(830).message("Data source does not exist");
+        }
+        String key = BaseService.getDataSourceKey(datasourceJson);
+        String table = body.get("table").toString();
+        try {
+            Map<String, Object> data = new HashMap<>();
+            data.put("name", table);
+            data.put("columns", MetadataCache.getColumns(key, dataSource, table));
+            data.put("primaryKeys", MetadataCache.getPrimaryKeys(key, dataSource, table));
+            return Result.success(data);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * This method returns the DDL of a table, selected by the ddlSql of the
+     * dialect.
+     *
+     * @param body
+     * @return
+     */
+    public static Result ddl(Map<String, Object> body) {
+        if (!body.containsKey("table")) {
+            return new Result(500).message("table is required");
+        }
+        JSONObject datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
+        if (dataSource == null) {
+            return new Result(830).message("Data source does not exist");
+        }
+        String key = BaseService.getDataSourceKey(datasourceJson);
+        body = MetadataCache.withDialect(key, body);
+        if (!body.containsKey("ddlSql")) {
+            return new Result(500).message("ddlSql is required");
+        }
+        String table = body.get("table").toString();
+        String sql = body.get("ddlSql").toString().replace("{table}", table);
+        try {
+            return Result.success(MetadataCache.getDdl(key, table, () -> {
+                try (java.sql.Connection conn = dataSource.getConnection();
+                        java.sql.Statement stmt = conn.createStatement();
+                        java.sql.ResultSet rs = stmt.executeQuery(sql)) {
+                    return rs.next() && rs.getString(2) != null ? rs.getString(2) : "";
+                }
+            }));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * This method drops the cached schema of a datasource.
+     *
+     * @param body
+     * @return
+     */
+    public static Result invalidate(Map<String, Object> body) {
+        JSONObject datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        if (datasourceJson == null) {
+            return new Result(830).message("Data source does not exist");
+        }
+        MetadataCache.invalidate(BaseService.getDataSourceKey(datasourceJson));
+        return Result.success().message("Metadata invalidated");
+    }
+}
@@ -0,0 +1,106 @@
+package com.udb.server.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+
+/**
+ * The SlowStatementLog class logs the statements of the SQL tasks that take
+ * longer than a threshold, with the breakdown of their time, to the console
+ * and to ~/.udb/server/slow-sql.log.
+ * The string literals of the statement are masked and the statement is cut
+ * after MAX_SQL_LENGTH characters, since it can hold passwords. The file can
+ * only be read by its owner, and is moved to slow-sql.log.1 once it is over
+ * MAX_FILE_BYTES.
+ * A threshold below 0 turns the log off.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class SlowStatementLog {
+    private static final File FILE = new File(System.getProperty("user.home"), ".udb/server/slow-sql.log");
+    private static final String[] FIELDS = { "executeMs", "firstRowMs", "fetchMs", "materializeMs", "rowCount",
+            "bytes" };
+    private static final int MAX_SQL_LENGTH = 500;
+    private static final long MAX_FILE_BYTES = 10L * 1024 * 1024;
+    private static volatile long threshold = 1000;
+    // Whether a file left by an older version got its permissions tightened
+    private static boolean secured;
+
+    /**
+     * Set the threshold, called once at startup.
+     *
+     * @param thresholdMs
+     */
+    public static void configure(long thresholdMs) {
+        threshold = thresholdMs;
+    }
+
+    /**
+     * Log a statement if it is slow.
+     *
+     * @param datasourceKey
+     * @param sql
+     * @param elapsedMs the time of the whole statement
+     * @param timing    the timing fields of the result of the statement
+     */
+    public static void log(String datasourceKey, String sql, double elapsedMs, Map<String, Object> timing) {
+        if (threshold < 0 || elapsedMs < threshold) {
+            return;
+        }
+        StringBuilder line = new StringBuilder();
+        line.append(java.time.Instant.now()).append(" ").append(datasourceKey).append(" elapsedMs=").append(elapsedMs);
+        for (String field : FIELDS) {
+            if (timing.containsKey(field)) {
+                line.append(" ").append(field).append("=").append(timing.get(field));
+            }
+        }
+        // Quoted literals may be passwords, like in ALTER USER ... IDENTIFIED BY
+        String text = sql.trim().replaceAll("'(?:[^']|'')*'", "'?'").replaceAll("\\s+", " ");
+        if (text.length() > MAX_SQL_LENGTH) {
+            text = text.substring(0, MAX_SQL_LENGTH) + "...";
+        }
+        line.append(" sql=").append(text);
+        System.out.println("Slow sql: " + line);
+        synchronized (SlowStatementLog.class) {
+            try {
+                append(line.append(System.lineSeparator()).toString());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void append(String line) throws IOException {
+        FILE.getParentFile().mkdirs();
+        if (FILE.length() > MAX_FILE_BYTES) {
+            Files.move(FILE.toPath(), new File(FILE.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (FILE.exists()) {
+            if (!secured && posix) {
+                Files.setPosixFilePermissions(FILE.toPath(), PosixFilePermissions.fromString("rw-------"));
+            }
+        } else {
+            if (posix) {
+                Files.createFile(FILE.toPath(),
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } else {
+                FILE.createNewFile();
+                FILE.setReadable(false, false);
+                FILE.setWritable(false, false);
+                FILE.setReadable(true, true);
+                FILE.setWritable(true, true);
+            }
+        }
+        secured = true;
+        Files.write(FILE.toPath(), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
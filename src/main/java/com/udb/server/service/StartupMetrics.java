@@ -0,0 +1,58 @@
+package com.udb.server.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The StartupMetrics class records how long the server took, from the start
+ * of the JVM, to be ready and to answer its first query, and whether it ran
+ * with the AOT bean definitions and the class data sharing archive.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class StartupMetrics {
+    // -1 until it happens
+    private static volatile long readyMs = -1;
+    private static volatile long firstQueryMs = -1;
+
+    /**
+     * Record that the server is ready, called once.
+     */
+    public static void ready() {
+        readyMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println("Time to ready: " + readyMs + "ms");
+    }
+
+    /**
+     * Record a query answered, only the first one counts.
+     */
+    public static void query() {
+        if (firstQueryMs >= 0) {
+            return;
+        }
+        synchronized (StartupMetrics.class) {
+            if (firstQueryMs < 0) {
+                firstQueryMs = ManagementFactory.getRuntimeMXBean().getUptime();
+                System.out.println("Time to first query: " + firstQueryMs + "ms");
+            }
+        }
+    }
+
+    /**
+     * The startup times in milliseconds since the start of the JVM.
+     *
+     * @return
+     */
+    public static Map<String, Object> get() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("readyMs", readyMs);
+        metrics.put("firstQueryMs", firstQueryMs);
+        metrics.put("aot", Boolean.getBoolean("spring.aot.enabled"));
+        metrics.put("cds", ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                .anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile")));
+        return metrics;
+    }
+}
@@ -0,0 +1,28 @@
+package com.udb.server.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * The TaskConfig class passes the udb.task.* properties to the task registry
+ * and udb.sql.slow-threshold to the slow statement log.
+ * The TTLs are in seconds, the threshold in milliseconds.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+@Configuration
+// Created at startup, with lazy initialization as well
+@Lazy(false)
+public class TaskConfig {
+
+    public TaskConfig(@Value("${udb.task.result-ttl:600}") long resultTtl,
+            @Value("${udb.task.transaction-ttl:1800}") long transactionTtl,
+            @Value("${udb.task.heap-threshold:0.85}") double heapThreshold,
+            @Value("${udb.sql.slow-threshold:1000}") long slowThreshold) {
+        TaskRegistry.configure(resultTtl * 1000, transactionTtl * 1000, heapThreshold);
+        SlowStatementLog.configure(slowThreshold);
+    }
+}
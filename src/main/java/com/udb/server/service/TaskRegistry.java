@@ -0,0 +1,207 @@
+package com.udb.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TaskRegistry class keeps the tasks until their results are read.
+ * It is safe to use from the HTTP threads and from the tasks themselves.
+ * Results that nobody reads expire after the result TTL, transactions left
+ * open expire after the transaction TTL and are rolled back. When the heap is
+ * fuller than the heap threshold, the largest results of the finished tasks
+ * are dropped first.
+ * A client asking for an expired task is told why it is gone.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class TaskRegistry {
+    private static final Map<String, Entry> tasks = new ConcurrentHashMap<>();
+    // Why the tasks that were dropped are gone, kept for one result TTL
+    private static final Map<String, Expired> expired = new ConcurrentHashMap<>();
+
+    private static volatile long resultTtl = 10 * 60 * 1000;
+    private static volatile long transactionTtl = 30 * 60 * 1000;
+    private static volatile double heapThreshold = 0.85;
+    // A result read in the last seconds is still in use, even under pressure
+    private static final long IDLE_MILLIS = 10000;
+
+    private static class Entry {
+        private final String id;
+        private final ComThread thread;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Entry(String id, ComThread thread) {
+            this.id = id;
+            this.thread = thread;
+        }
+
+        private boolean isFinished() {
+            return thread.getEndTime() != null;
+        }
+
+        private boolean isOpenTransaction() {
+            return thread.isTransaction() && !thread.isCommitOrRollback();
+        }
+
+        private long idleSince() {
+            long end = thread.getEndTime() == null ? 0 : thread.getEndTime().getTime();
+            return Math.max(end, lastAccess);
+        }
+    }
+
+    private static class Expired {
+        private final String message;
+        private final long time = System.currentTimeMillis();
+
+        private Expired(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Set the expiry of the tasks.
+     *
+     * @param resultTtl      milliseconds a finished result is kept unread
+     * @param transactionTtl milliseconds an open transaction is kept idle
+     * @param heapThreshold  fraction of the maximum heap above which results are
+     *                       dropped
+     */
+    public static void configure(long resultTtl, long transactionTtl, double heapThreshold) {
+        TaskRegistry.resultTtl = resultTtl;
+        TaskRegistry.transactionTtl = transactionTtl;
+        TaskRegistry.heapThreshold = heapThreshold;
+    }
+
+    public static void put(String id, ComThread thread) {
+        tasks.put(id, new Entry(id, thread));
+    }
+
+    /**
+     * Get a task, a client asking for it keeps it alive.
+     *
+     * @param id
+     * @return null if there is no such task
+     */
+    public static ComThread get(String id) {
+        Entry entry = tasks.get(id);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return entry.thread;
+    }
+
+    public static void remove(String id) {
+        tasks.remove(id);
+    }
+
+    /**
+     * Why a task is gone, if it was dropped by the registry.
+     *
+     * @param id
+     * @return null if the task was not dropped
+     */
+    public static String getExpiredMessage(String id) {
+        Expired gone = expired.get(id);
+        return gone == null ? null : gone.message;
+    }
+
+    public static Map<String, ComThread> getTasks() {
+        Map<String, ComThread> map = new java.util.LinkedHashMap<>();
+        for (Entry entry : tasks.values()) {
+            map.put(entry.id, entry.thread);
+        }
+        return map;
+    }
+
+    /**
+     * The bytes retained by all the tasks.
+     *
+     * @return
+     */
+    public static long getRetainedBytes() {
+        long bytes = 0;
+        for (Entry entry : tasks.values()) {
+            bytes += entry.thread.getRetainedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Called by the watchdog once a second, drop the expired tasks and relieve
+     * the heap.
+     */
+    static void sweep() {
+        long now = System.currentTimeMillis();
+        for (Entry entry : tasks.values()) {
+            if (!entry.isFinished() || now - entry.idleSince() <= ttlOf(entry)) {
+                continue;
+            }
+            if (entry.isOpenTransaction()) {
+                try {
+                    entry.thread.rollback();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                drop(entry, "Transaction has been rolled back after being idle");
+            } else {
+                drop(entry, "Task result has expired");
+            }
+        }
+        expired.values().removeIf(gone -> now - gone.time > resultTtl);
+        relieveHeap();
+    }
+
+    private static long ttlOf(Entry entry) {
+        return entry.isOpenTransaction() ? transactionTtl : resultTtl;
+    }
+
+    /**
+     * Drop the largest finished results until the heap is back under the
+     * threshold. The estimates are rough, so only what they promise is dropped.
+     */
+    private static void relieveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long limit = (long) (runtime.maxMemory() * heapThreshold);
+        if (used <= limit) {
+            return;
+        }
+        List<Entry> idle = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Entry entry : tasks.values()) {
+            if (entry.isFinished() && !entry.isOpenTransaction() && now - entry.idleSince() > IDLE_MILLIS) {
+                idle.add(entry);
+            }
+        }
+        idle.sort((a, b) -> Long.compare(b.thread.getRetainedBytes(), a.thread.getRetainedBytes()));
+        long excess = used - limit;
+        for (Entry entry : idle) {
+            if (excess <= 0) {
+                break;
+            }
+            long bytes = entry.thread.getRetainedBytes();
+            if (bytes <= 0) {
+                break;
+            }
+            System.out.println("Heap above " + heapThreshold + ", drop result of task " + entry.id + ": " + bytes
+                    + " bytes");
+            drop(entry, "Task result has been dropped to free memory");
+            excess -= bytes;
+        }
+    }
+
+    private static void drop(Entry entry, String message) {
+        if (tasks.remove(entry.id, entry)) {
+            entry.thread.end();
+            if (entry.thread.getResults() != null) {
+                entry.thread.getResults().clear();
+            }
+            expired.put(entry.id, new Expired(message));
+        }
+    }
+}
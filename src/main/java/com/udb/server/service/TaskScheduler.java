@@ -0,0 +1,216 @@
+package com.udb.server.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The TaskScheduler class admits the tasks of every datasource up to the size
+ * of its connection pool, and queues the others.
+ * The worker connections that bulk tasks open outside of the pools are counted
+ * apart, against the worker limit of their datasource, the target of a copy or
+ * a compare included. A task waits until all its workers fit.
+ * Interactive SQL goes before bulk tasks such as dumps and imports, and bulk
+ * tasks never take the last connection of a pool, so that a query does not
+ * wait behind a long dump. A bulk task that has waited for a while is treated
+ * as interactive, so that it is not starved.
+ * Between the tasks of the same level, the users take turns: the user served
+ * the longest ago goes first.
+ * Queued tasks report their queuePosition in their detail, admitted tasks the
+ * waitMs they spent in the queue.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class TaskScheduler {
+    // Waiting tasks per datasource, beyond that new tasks are rejected
+    private static final int MAX_QUEUED = 100;
+    // A bulk task that has waited this long goes before interactive tasks
+    private static final long AGING_MILLIS = 30000;
+
+    private static final Map<String, Lane> lanes = new HashMap<>();
+    // Worker connections held by the running tasks, by datasource
+    private static final Map<String, Integer> workers = new HashMap<>();
+
+    private static class Lane {
+        private final List<Entry> queue = new ArrayList<>();
+        private final Set<ComThread> running = new HashSet<>();
+        private final Map<String, Long> lastServed = new HashMap<>();
+        private long served;
+    }
+
+    private static class Entry {
+        private final ComThread thread;
+        private final String user;
+        private final boolean interactive;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private Entry(ComThread thread, String user) {
+            this.thread = thread;
+            this.user = user;
+            this.interactive = thread.getType().equals("sql");
+        }
+
+        private boolean isUrgent(long now) {
+            return interactive || now - queuedAt >= AGING_MILLIS;
+        }
+    }
+
+    /**
+     * Queue a task on the lane of its datasource, and start it at once if the
+     * datasource has a free connection.
+     *
+     * @param thread
+     * @param user   the user the task belongs to
+     * @return false if the queue of the datasource is full
+     */
+    public static synchronized boolean submit(ComThread thread, String user) {
+        String key = thread.getDatasourceKey();
+        Lane lane = lanes.computeIfAbsent(key, k -> new Lane());
+        if (lane.queue.size() >= MAX_QUEUED) {
+            return false;
+        }
+        lane.queue.add(new Entry(thread, user));
+        dispatch(key, lane);
+        return true;
+    }
+
+    /**
+     * Remove a task that is still waiting from its queue.
+     *
+     * @param thread
+     * @return true if the task was waiting and will not run
+     */
+    public static synchronized boolean cancel(ComThread thread) {
+        String key = thread.getDatasourceKey();
+        Lane lane = lanes.get(key);
+        if (lane == null || !lane.queue.removeIf(entry -> entry.thread == thread)) {
+            return false;
+        }
+        thread.getDetail().remove("queuePosition");
+        updatePositions(lane);
+        return true;
+    }
+
+    /**
+     * Give the connection of a task back to its datasource and start the next
+     * task. Calling it more than once for a task has no effect.
+     *
+     * @param thread
+     */
+    public static synchronized void release(ComThread thread) {
+        String key = thread.getDatasourceKey();
+        Lane lane = lanes.get(key);
+        if (lane == null || !lane.running.remove(thread)) {
+            return;
+        }
+        for (Map.Entry<String, Integer> held : thread.getWorkerConnections().entrySet()) {
+            workers.merge(held.getKey(), -held.getValue(), (a, b) -> a + b == 0 ? null : a + b);
+        }
+        if (thread.getWorkerConnections().isEmpty()) {
+            dispatch(key, lane);
+        } else {
+            // The workers it gives back may let tasks of other datasources start
+            tick();
+        }
+        if (lane.running.isEmpty() && lane.queue.isEmpty()) {
+            lanes.remove(key);
+        }
+    }
+
+    /**
+     * Called by the watchdog once a second, admit the bulk tasks that have
+     * waited long enough to take the last connection.
+     */
+    static synchronized void tick() {
+        for (Map.Entry<String, Lane> lane : new ArrayList<>(lanes.entrySet())) {
+            if (!lane.getValue().queue.isEmpty()) {
+                dispatch(lane.getKey(), lane.getValue());
+            }
+        }
+    }
+
+    private static void dispatch(String key, Lane lane) {
+        int capacity = Math.max(1, BaseService.getPoolSize(key));
+        while (!lane.queue.isEmpty() && lane.running.size() < capacity) {
+            Entry next = next(lane, lane.running.size() < capacity - 1);
+            if (next == null) {
+                break;
+            }
+            lane.queue.remove(next);
+            lane.running.add(next.thread);
+            for (Map.Entry<String, Integer> needed : next.thread.getWorkerConnections().entrySet()) {
+                workers.merge(needed.getKey(), needed.getValue(), Integer::sum);
+            }
+            lane.lastServed.put(next.user, ++lane.served);
+            long waitMs = System.currentTimeMillis() - next.queuedAt;
+            next.thread.getDetail().remove("queuePosition");
+            next.thread.getDetail().put("waitMs", waitMs);
+            System.out.println("Task " + next.thread.getSessionId() + " admitted on " + key + " after " + waitMs
+                    + "ms");
+            next.thread.start();
+        }
+        updatePositions(lane);
+    }
+
+    /**
+     * Pick the next task: the urgent ones first, then the user served the longest
+     * ago, then the oldest task.
+     *
+     * @param lane
+     * @param bulkAllowed whether a bulk task may take the free connection
+     * @return
+     */
+    private static Entry next(Lane lane, boolean bulkAllowed) {
+        long now = System.currentTimeMillis();
+        Entry best = null;
+        for (Entry entry : lane.queue) {
+            if (!bulkAllowed && !entry.isUrgent(now) || !workersFit(entry.thread)) {
+                continue;
+            }
+            if (best == null || before(lane, entry, best, now)) {
+                best = entry;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Whether the worker connections of a task fit under the worker limits of
+     * their datasources.
+     */
+    private static boolean workersFit(ComThread thread) {
+        for (Map.Entry<String, Integer> needed : thread.getWorkerConnections().entrySet()) {
+            int held = workers.getOrDefault(needed.getKey(), 0);
+            if (held > 0 && held + needed.getValue() > BaseService.getWorkerLimit(needed.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean before(Lane lane, Entry a, Entry b, long now) {
+        if (a.isUrgent(now) != b.isUrgent(now)) {
+            return a.isUrgent(now);
+        }
+        long servedA = lane.lastServed.getOrDefault(a.user, 0L);
+        long servedB = lane.lastServed.getOrDefault(b.user, 0L);
+        if (servedA != servedB) {
+            return servedA < servedB;
+        }
+        return a.queuedAt < b.queuedAt;
+    }
+
+    private static void updatePositions(Lane lane) {
+        List<Entry> order = new ArrayList<>(lane.queue);
+        long now = System.currentTimeMillis();
+        order.sort((a, b) -> before(lane, a, b, now) ? -1 : before(lane, b, a, now) ? 1 : 0);
+        for (int i = 0; i < order.size(); i++) {
+            order.get(i).thread.getDetail().put("queuePosition", i + 1);
+        }
+    }
+}
@@ -1,16 +1,22 @@
 package com.udb.server.service;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
 
-import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.udb.server.bodies.Result;
 import com.udb.server.bodies.TaskBody;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.udb.server.service.thread.CompareThread;
+import com.udb.server.service.thread.CopyThread;
 import com.udb.server.service.thread.DumpThread;
+import com.udb.server.service.thread.ExportThread;
 import com.udb.server.service.thread.ImportThread;
+import com.udb.server.service.thread.RestoreThread;
 import com.udb.server.service.thread.SQLThread;
+import com.udb.server.service.wire.ResultWriter;
 
 /**
  * 
@@ -30,9 +36,6 @@ import com.udb.server.service.thread.SQLThread;
  */
 public class TaskService {
 
-    // The map stores the execution tasks
-    private static Map<String, ComThread> taskMap = new java.util.HashMap<>();
-
     /**
      * This method executes SQL statements.
      * It returns a JSON object that contains the execution status, start time, end
@@ -43,30 +46,51 @@ public class TaskService {
      */
 
     public static Result run(Map<String, Object> body) {
-        // If the number of tasks is greater than 10, return an error message
-        if (taskMap.size() >= 10) {
-            return new Result(100).message("Too many tasks");
-        }
         if (!body.containsKey("type")) {
             return new Result(500).message("type is required");
         }
         String type = body.get("type").toString();
+        // A registered datasource may be sent as its handle
+        for (String field : new String[] { "datasource", "targetDatasource" }) {
+            if (body.containsKey(field) && BaseService.parseDatasource(body.get(field).toString()) == null) {
+                return new Result(830).message("Data source does not exist: " + body.get(field));
+            }
+        }
+        // The dialect strings may be left out once they were sent for the datasource
+        if (body.containsKey("datasource")) {
+            body = MetadataCache.withDialect(
+                    BaseService.getDataSourceKey(BaseService.parseDatasource(body.get("datasource").toString())),
+                    body);
+        }
         String id = UUID.randomUUID().toString();
+        ComThread thread;
         if (type.equals("sql")) {
-            ComThread thread = new SQLThread(id, body);
-            taskMap.put(id, thread);
-            thread.start();
+            thread = new SQLThread(id, body);
         } else if (type.equals("dump")) {
-            ComThread thread = new DumpThread(id, body);
-            taskMap.put(id, thread);
-            thread.start();
-        }else if (type.equals("import")) {
-            ComThread thread = new ImportThread(id, body);
-            taskMap.put(id, thread);
-            thread.start();
-        }  else {
+            thread = new DumpThread(id, body);
+        } else if (type.equals("import")) {
+            thread = new ImportThread(id, body);
+        } else if (type.equals("restore")) {
+            thread = new RestoreThread(id, body);
+        } else if (type.equals("copy")) {
+            thread = new CopyThread(id, body);
+        } else if (type.equals("export")) {
+            thread = new ExportThread(id, body);
+        } else if (type.equals("compare")) {
+            thread = new CompareThread(id, body);
+        } else {
             return new Result(500).message("type is invalid");
         }
+        // maxRuntime, maxRows, maxBytes
+        thread.applyLimits(body);
+        // The task waits for a connection of its datasource, the users take turns
+        String user = body.containsKey("user") ? body.get("user").toString() : "default";
+        TaskRegistry.put(id, thread);
+        if (!TaskScheduler.submit(thread, user)) {
+            TaskRegistry.remove(id);
+            return new Result(100).message("Too many tasks");
+        }
+        TaskWatchdog.watch(thread);
         return Result.running().id(id);
     }
 
@@ -77,7 +101,7 @@ public class TaskService {
      */
     public static Result list() {
         JSONArray tasks = new JSONArray();
-        for (Map.Entry<String, ComThread> entry : taskMap.entrySet()) {
+        for (Map.Entry<String, ComThread> entry : TaskRegistry.getTasks().entrySet()) {
             JSONObject task = new JSONObject();
             task.put("id", entry.getKey());
             task.put("startTime", entry.getValue().getStartTime());
@@ -86,54 +110,53 @@ public class TaskService {
             task.put("errorMessage", entry.getValue().getMessage());
             task.put("lable", entry.getValue().getLable());
             task.put("progress", entry.getValue().getProgress());
+            task.put("detail", entry.getValue().getDetail());
+            task.put("retainedBytes", entry.getValue().getRetainedBytes());
             tasks.add(task);
         }
         return Result.success(tasks);
     }
 
     /**
-     * This method returns the result of a task.
-     * It returns a JSON object that contains the execution status, start time, end
-     * time, and results.
+     * This method writes the result of a task to the response.
+     * It writes a JSON object that contains the execution status, start time, end
+     * time, and results. The results are written as they are taken from the task,
+     * without building the whole response in memory.
      * 
-     * @param id
-     * @return
+     * @param body
+     * @param writer the writer of the format the client accepts
+     * @throws IOException
      */
-    public static Result result(TaskBody body) {
+    public static void result(TaskBody body, ResultWriter writer) throws IOException {
         String id = body.getId();
-        ComThread thread = taskMap.get(id);
-        if (thread == null) {
-            return new Result(820).message("Task does not exist");
-        }
-        // Add the results
-        String results = "[";
-        if (thread.getResults() != null && thread.getResults().size() > 0) {
-            while (thread.getResults().size() > 0) {
-                Map<String, Object> result = thread.getResults().poll();
-                results += JSON.toJSONString(result) + ",";
+        ComThread thread = TaskRegistry.get(id);
+        try {
+            if (thread == null) {
+                writer.write(notExist(id), null);
+                return;
             }
-        }
-        if (results.length() > 1) {
-            results = results.substring(0, results.length() - 1);
-        }
-        results += "]";
-
-        // Add the error message
-        if (thread.getEndTime() == null) {
-            return Result.running().id(id).startTime(thread.getStartTime()).endTime(thread.getEndTime());
-        } else {
-            Result rs = Result.success().data(results).startTime(thread.getStartTime()).endTime(thread.getEndTime())
-                    .id(id).progress(thread.getProgress()).message(thread.getMessage());
+            // Keep the results queued until the task has finished
+            if (thread.getEndTime() == null) {
+                writer.write(Result.running().id(id).startTime(thread.getStartTime()).endTime(thread.getEndTime())
+                        .progress(thread.getProgress()).detail(thread.getDetail()), null);
+                return;
+            }
+            // Add the error message
+            Result rs = Result.success().startTime(thread.getStartTime()).endTime(thread.getEndTime())
+                    .id(id).progress(thread.getProgress()).message(thread.getMessage()).detail(thread.getDetail());
             if (thread.getStatus() != 200) {
                 rs.setStatus(thread.getStatus());
                 rs.setMessage(thread.getMessage());
             }
+            // Add the results
+            writer.write(rs, thread.getResults() == null ? new java.util.LinkedList<>() : thread.getResults());
             if (!thread.isTransaction() || thread.isCommitOrRollback()) {
                 // Close the connection
                 thread.end();
-                taskMap.remove(id);
+                TaskRegistry.remove(id);
             }
-            return rs;
+        } finally {
+            writer.close();
         }
     }
 
@@ -145,9 +168,9 @@ public class TaskService {
      */
     public static Result stop(TaskBody body) {
         String id = body.getId();
-        ComThread thread = taskMap.get(id);
+        ComThread thread = TaskRegistry.get(id);
         if (thread == null) {
-            return new Result(820).message("Task does not exist");
+            return notExist(id);
         }
         return thread.end();
     }
@@ -160,14 +183,14 @@ public class TaskService {
      */
     public static Result commit(TaskBody body) {
         String id = body.getId();
-        ComThread thread = taskMap.get(id);
+        ComThread thread = TaskRegistry.get(id);
         if (thread == null) {
-            return new Result(820).message("Task does not exist");
+            return notExist(id);
         }
         try {
             thread.commit();
             thread.end();
-            taskMap.remove(id);
+            TaskRegistry.remove(id);
             return Result.success().id(id).message("Commit success");
         } catch (Exception e) {
 
@@ -184,15 +207,14 @@ public class TaskService {
      */
     public static Result rollback(TaskBody body) {
         String id = body.getId();
-        ComThread thread = taskMap.get(id);
+        ComThread thread = TaskRegistry.get(id);
         if (thread == null) {
-
-            return new Result(820).message("Task does not exist");
+            return notExist(id);
         }
         try {
             thread.rollback();
             thread.end();
-            taskMap.remove(id);
+            TaskRegistry.remove(id);
             return Result.success().id(id).message("Rollback success");
         } catch (Exception e) {
 
@@ -201,4 +223,16 @@ public class TaskService {
 
     }
 
+    /**
+     * The answer for a task that is not registered, telling why if the registry
+     * dropped it.
+     *
+     * @param id
+     * @return
+     */
+    private static Result notExist(String id) {
+        String expired = TaskRegistry.getExpiredMessage(id);
+        return new Result(820).id(id).message(expired == null ? "Task does not exist" : expired);
+    }
+
 }
@@ -0,0 +1,63 @@
+package com.udb.server.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TaskWatchdog class checks the running tasks that have a runtime limit
+ * once a second, and cancels the ones that have run for too long.
+ * The statement timeout set on every statement is enforced by the database,
+ * the watchdog also covers the time spent between statements.
+ * It also gives the task scheduler a chance to admit the tasks that have
+ * waited too long, and the task registry to drop the expired results.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class TaskWatchdog {
+    private static final Set<ComThread> tasks = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "udb-task-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        scheduler.scheduleWithFixedDelay(TaskWatchdog::check, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Watch a task until it ends.
+     *
+     * @param thread
+     */
+    public static void watch(ComThread thread) {
+        if (thread.hasRuntimeLimit()) {
+            tasks.add(thread);
+        }
+    }
+
+    private static void check() {
+        try {
+            TaskScheduler.tick();
+            TaskRegistry.sweep();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        for (ComThread thread : tasks) {
+            try {
+                if (thread.getEndTime() != null || thread.getState() == Thread.State.TERMINATED) {
+                    tasks.remove(thread);
+                } else {
+                    thread.checkRuntime();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
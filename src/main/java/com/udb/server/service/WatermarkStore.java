@@ -0,0 +1,111 @@
+package com.udb.server.service;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * The WatermarkStore class keeps the high-water mark of the incremental dumps,
+ * the value of the watermark column the next dump of every table starts from,
+ * in ~/.udb/server/watermarks.json.
+ * The values keep their type, so that the next dump can bind them: numbers,
+ * dates, timestamps or strings.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class WatermarkStore {
+    private static final File FILE = new File(System.getProperty("user.home"), ".udb/server/watermarks.json");
+    private static JSONObject marks;
+
+    /**
+     * Get the mark of a table.
+     *
+     * @param datasourceKey
+     * @param table
+     * @param column
+     * @return null if the table was not dumped with this column before
+     */
+    public static synchronized Object get(String datasourceKey, String table, String column) {
+        JSONObject mark = load().getJSONObject(key(datasourceKey, table, column));
+        if (mark == null) {
+            return null;
+        }
+        String value = mark.getString("value");
+        switch (mark.getString("type")) {
+            case "number":
+                return new BigDecimal(value);
+            case "timestamp":
+                return Timestamp.valueOf(value);
+            case "date":
+                return java.sql.Date.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Store the mark of a table, written to the file at once.
+     *
+     * @param datasourceKey
+     * @param table
+     * @param column
+     * @param value
+     * @throws Exception
+     */
+    public static synchronized void put(String datasourceKey, String table, String column, Object value)
+            throws Exception {
+        JSONObject mark = new JSONObject();
+        if (value instanceof Number) {
+            mark.put("type", "number");
+            mark.put("value", new BigDecimal(value.toString()).toPlainString());
+        } else if (value instanceof Timestamp || value instanceof LocalDateTime) {
+            mark.put("type", "timestamp");
+            mark.put("value", (value instanceof LocalDateTime ? Timestamp.valueOf((LocalDateTime) value) : value)
+                    .toString());
+        } else if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            mark.put("type", "date");
+            mark.put("value", value.toString());
+        } else {
+            mark.put("type", "string");
+            mark.put("value", value.toString());
+        }
+        mark.put("updateTime", new java.util.Date());
+        load().put(key(datasourceKey, table, column), mark);
+        // Replace the file in one step, so that a crash leaves the old marks
+        FILE.getParentFile().mkdirs();
+        File temp = new File(FILE.getPath() + ".tmp");
+        Files.write(temp.toPath(), marks.toJSONString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String key(String datasourceKey, String table, String column) {
+        return datasourceKey + "/" + table + "/" + column;
+    }
+
+    private static JSONObject load() {
+        if (marks == null) {
+            marks = new JSONObject();
+            if (FILE.exists()) {
+                try {
+                    JSONObject stored = JSONObject.parseObject(new String(Files.readAllBytes(FILE.toPath()),
+                            StandardCharsets.UTF_8));
+                    if (stored != null) {
+                        marks = stored;
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return marks;
+    }
+}
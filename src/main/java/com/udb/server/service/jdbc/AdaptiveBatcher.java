@@ -0,0 +1,163 @@
+package com.udb.server.service.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The AdaptiveBatcher class decides when a statement executes its batch, and
+ * tunes the batch size from the measured rows per second.
+ * Every full batch is timed. While a change of size makes the rate better the
+ * size keeps moving the same way, and it turns back when the rate gets worse.
+ * The size always stays between the minimum and the maximum, keeps the
+ * estimated bytes of a batch under the memory cap, and shrinks when a single
+ * batch takes longer than the latency target, so that a slow link does not
+ * keep huge batches in flight.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class AdaptiveBatcher {
+    // Changes of the rate smaller than this are noise
+    private static final double TOLERANCE = 0.05;
+    private static final double STEP = 1.5;
+
+    private final Statement stmt;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxBytes;
+    private final long maxLatencyNanos;
+    private int batchSize;
+    private boolean growing = true;
+    private double lastRate;
+    // Current batch
+    private int count;
+    private long bytes;
+    private long rows;
+    private long lastBytes;
+
+    public AdaptiveBatcher(Statement stmt) {
+        this(stmt, 1000, 100, 50000, 16L * 1024 * 1024, 2000);
+    }
+
+    /**
+     * @param stmt           the statement holding the batch
+     * @param initialSize    the first batch size
+     * @param minSize
+     * @param maxSize
+     * @param maxBytes       the memory cap of a batch
+     * @param maxLatencyMs   the longest time a batch should take
+     */
+    public AdaptiveBatcher(Statement stmt, int initialSize, int minSize, int maxSize, long maxBytes,
+            long maxLatencyMs) {
+        this.stmt = stmt;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.maxLatencyNanos = maxLatencyMs * 1000000L;
+        this.batchSize = Math.max(minSize, Math.min(maxSize, initialSize));
+    }
+
+    /**
+     * Count a row added to the batch of the statement, and execute the batch
+     * when it is full.
+     *
+     * @param rowBytes the estimated size of the row
+     * @return the number of rows executed, 0 if the batch is not full yet
+     * @throws SQLException
+     */
+    public int added(long rowBytes) throws SQLException {
+        count++;
+        bytes += rowBytes;
+        if (count >= batchSize || bytes >= maxBytes) {
+            return execute(true);
+        }
+        return 0;
+    }
+
+    /**
+     * Execute what is left in the batch.
+     *
+     * @return the number of rows executed
+     * @throws SQLException
+     */
+    public int flush() throws SQLException {
+        return execute(false);
+    }
+
+    private int execute(boolean full) throws SQLException {
+        if (count == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        stmt.executeBatch();
+        stmt.clearBatch();
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        int executed = count;
+        if (full) {
+            adjust(executed, bytes, elapsed);
+        }
+        rows += executed;
+        lastBytes = bytes;
+        count = 0;
+        bytes = 0;
+        return executed;
+    }
+
+    private void adjust(int size, long batchBytes, long elapsed) {
+        double rate = size * 1e9 / elapsed;
+        if (elapsed > maxLatencyNanos) {
+            growing = false;
+        } else if (lastRate > 0 && rate < lastRate * (1 - TOLERANCE)) {
+            growing = !growing;
+        } else if (lastRate > 0 && rate < lastRate * (1 + TOLERANCE)) {
+            // No real difference, stay here
+            lastRate = rate;
+            return;
+        }
+        lastRate = rate;
+        int next = growing ? (int) Math.ceil(size * STEP) : (int) (size / STEP);
+        long rowBytes = Math.max(1, batchBytes / size);
+        next = (int) Math.min(next, maxBytes / rowBytes);
+        batchSize = Math.max(minSize, Math.min(maxSize, next));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Get the number of rows executed so far.
+     *
+     * @return
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the estimated bytes of the last executed batch.
+     *
+     * @return
+     */
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    /**
+     * Estimate the size of a bound value.
+     *
+     * @param value
+     * @return
+     */
+    public static long sizeOf(Object value) {
+        if (value == null) {
+            return 1;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() * 2L;
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 8;
+    }
+}
@@ -0,0 +1,46 @@
+package com.udb.server.service.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The DatabaseFamily enum groups JDBC drivers by the database they talk to,
+ * for the few places where the SQL or the driver settings have to differ.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public enum DatabaseFamily {
+    MYSQL, MARIADB, POSTGRESQL, ORACLE, SQLSERVER, SQLITE, OTHER;
+
+    /**
+     * Detect the family from the product name reported by the driver.
+     *
+     * @param conn
+     * @return
+     * @throws SQLException
+     */
+    public static DatabaseFamily of(Connection conn) throws SQLException {
+        String product = conn.getMetaData().getDatabaseProductName();
+        return ofProductName(product == null ? "" : product);
+    }
+
+    public static DatabaseFamily ofProductName(String product) {
+        String name = product.toLowerCase();
+        if (name.contains("mariadb")) {
+            return MARIADB;
+        } else if (name.contains("mysql")) {
+            return MYSQL;
+        } else if (name.contains("postgresql")) {
+            return POSTGRESQL;
+        } else if (name.contains("oracle")) {
+            return ORACLE;
+        } else if (name.contains("microsoft sql server")) {
+            return SQLSERVER;
+        } else if (name.contains("sqlite")) {
+            return SQLITE;
+        }
+        return OTHER;
+    }
+}
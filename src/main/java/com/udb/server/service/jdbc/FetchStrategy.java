@@ -0,0 +1,86 @@
+package com.udb.server.service.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The FetchStrategy class sets up statements so that large results are
+ * streamed by the driver instead of being read into memory at once.
+ * Every driver family needs something different:
+ * MySQL streams row by row with a fetch size of Integer.MIN_VALUE, or fetches
+ * through a server cursor when the URL sets useCursorFetch=true.
+ * MariaDB streams with a positive fetch size.
+ * PostgreSQL only uses a cursor when autocommit is off.
+ * Oracle and SQL Server read ahead by the fetch size, which is 10 rows by
+ * default for Oracle.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class FetchStrategy {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * Prepare a connection used only to read, so that its statements can
+     * stream. For PostgreSQL this turns autocommit off, the pool restores it
+     * when the connection is given back.
+     *
+     * @param conn
+     * @throws SQLException
+     */
+    public static void prepareConnection(Connection conn) throws SQLException {
+        if (DatabaseFamily.of(conn) == DatabaseFamily.POSTGRESQL && conn.getAutoCommit()) {
+            conn.setAutoCommit(false);
+        }
+    }
+
+    /**
+     * Create a forward only, read only statement on a connection prepared with
+     * {@link #prepareConnection(Connection)}.
+     *
+     * @param conn
+     * @return
+     * @throws SQLException
+     */
+    public static Statement createStatement(Connection conn) throws SQLException {
+        return createStatement(conn, DEFAULT_FETCH_SIZE);
+    }
+
+    public static Statement createStatement(Connection conn, int fetchSize) throws SQLException {
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        apply(conn, stmt, fetchSize);
+        return stmt;
+    }
+
+    /**
+     * Set the fetch size of a statement for the driver family of its
+     * connection. Autocommit is left as it is, so this is safe on connections
+     * that also write.
+     *
+     * @param conn
+     * @param stmt
+     * @param fetchSize
+     * @throws SQLException
+     */
+    public static void apply(Connection conn, Statement stmt, int fetchSize) throws SQLException {
+        switch (DatabaseFamily.of(conn)) {
+            case MYSQL:
+                String url = conn.getMetaData().getURL();
+                if (url != null && url.contains("useCursorFetch=true")) {
+                    stmt.setFetchSize(fetchSize);
+                } else {
+                    stmt.setFetchSize(Integer.MIN_VALUE);
+                }
+                break;
+            case SQLITE:
+                // Rows are read from the file one step at a time anyway
+                break;
+            default:
+                stmt.setFetchSize(fetchSize);
+                break;
+        }
+    }
+}
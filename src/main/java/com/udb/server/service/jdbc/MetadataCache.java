@@ -0,0 +1,266 @@
+package com.udb.server.service.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+/**
+ * The MetadataCache class keeps the schema of every datasource: its tables,
+ * the columns and primary keys of the tables and their DDL.
+ * The tables, the columns and the primary keys are loaded together from
+ * DatabaseMetaData, one call each for the whole schema. Drivers that only
+ * give the primary keys of one table at a time are asked table by table, on
+ * first use. The DDL is loaded per table by the dialect query of the client.
+ * The schema of a datasource is kept until it is invalidated, by the client or
+ * by a DDL statement run through the server.
+ * The dialect strings of the client (pageSql, ddlSql, ...) are kept as well, so
+ * that a request can leave out the ones it already sent for the datasource.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class MetadataCache {
+    // The request fields that depend only on the database type
+    private static final String[] DIALECT_KEYS = { "dropTableSql", "ddlSql", "pageSql", "clearTableSql",
+            "identifierQuoteSymbol", "fieldTypes" };
+
+    private static final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Object>> dialects = new ConcurrentHashMap<>();
+
+    /**
+     * Load the DDL of a table when it is not cached.
+     */
+    public interface DdlLoader {
+        String load() throws Exception;
+    }
+
+    private static class Schema {
+        private final List<Map<String, Object>> tables = new ArrayList<>();
+        private final Map<String, List<Map<String, Object>>> columns = new TreeMap<>(
+                String.CASE_INSENSITIVE_ORDER);
+        // null when the driver cannot list the keys of all the tables at once
+        private Map<String, List<String>> primaryKeys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private final Map<String, String> ddl = new ConcurrentHashMap<>();
+        // 0 until the tables, the columns and the keys are loaded
+        private volatile long loadedAt;
+    }
+
+    /**
+     * The tables and views of a datasource: name, type and remarks.
+     *
+     * @param key        the key of the datasource
+     * @param dataSource
+     * @return
+     * @throws SQLException
+     */
+    public static List<Map<String, Object>> getTables(String key, DataSource dataSource) throws SQLException {
+        return schema(key, dataSource).tables;
+    }
+
+    /**
+     * The columns of a table, in their order in the table.
+     *
+     * @param key
+     * @param dataSource
+     * @param table
+     * @return an empty list if the table does not exist
+     * @throws SQLException
+     */
+    public static List<Map<String, Object>> getColumns(String key, DataSource dataSource, String table)
+            throws SQLException {
+        List<Map<String, Object>> columns = schema(key, dataSource).columns.get(table);
+        return columns == null ? new ArrayList<>() : columns;
+    }
+
+    /**
+     * The primary key columns of a table, in their order in the key.
+     *
+     * @param key
+     * @param dataSource
+     * @param table
+     * @return
+     * @throws SQLException
+     */
+    public static List<String> getPrimaryKeys(String key, DataSource dataSource, String table)
+            throws SQLException {
+        Schema schema = schema(key, dataSource);
+        if (schema.primaryKeys != null) {
+            List<String> keys = schema.primaryKeys.get(table);
+            return keys == null ? new ArrayList<>() : keys;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData meta = conn.getMetaData();
+            Map<String, List<String>> keys = readPrimaryKeys(meta.getPrimaryKeys(conn.getCatalog(),
+                    conn.getSchema(), table));
+            return keys.isEmpty() ? new ArrayList<>() : keys.values().iterator().next();
+        }
+    }
+
+    /**
+     * The DDL of a table, loaded on first use.
+     *
+     * @param key
+     * @param table
+     * @param loader
+     * @return
+     * @throws Exception
+     */
+    public static String getDdl(String key, String table, DdlLoader loader) throws Exception {
+        Schema schema = schemas.computeIfAbsent(key, k -> new Schema());
+        String ddl = schema.ddl.get(table);
+        if (ddl == null) {
+            ddl = loader.load();
+            schema.ddl.put(table, ddl);
+        }
+        return ddl;
+    }
+
+    /**
+     * When the schema of a datasource was loaded.
+     *
+     * @param key
+     * @return 0 if it is not loaded
+     */
+    public static long getLoadedAt(String key) {
+        Schema schema = schemas.get(key);
+        return schema == null ? 0 : schema.loadedAt;
+    }
+
+    /**
+     * Forget the schema of a datasource, it is loaded again on next use.
+     *
+     * @param key
+     */
+    public static void invalidate(String key) {
+        if (schemas.remove(key) != null) {
+            System.out.println("Metadata invalidated:" + key);
+        }
+    }
+
+    /**
+     * Whether a statement changes the schema.
+     *
+     * @param sql
+     * @return
+     */
+    public static boolean isDdl(String sql) {
+        String statement = sql.trim().toUpperCase();
+        return statement.startsWith("CREATE") || statement.startsWith("ALTER") || statement.startsWith("DROP")
+                || statement.startsWith("RENAME") || statement.startsWith("COMMENT");
+    }
+
+    /**
+     * Fill in the dialect strings a request leaves out with the ones sent before
+     * for the same datasource, and remember the ones it sends.
+     *
+     * @param key
+     * @param body
+     * @return the body with the dialect strings
+     */
+    public static Map<String, Object> withDialect(String key, Map<String, Object> body) {
+        Map<String, Object> dialect = dialects.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        Map<String, Object> filled = new HashMap<>(body);
+        for (String dialectKey : DIALECT_KEYS) {
+            Object value = body.get(dialectKey);
+            if (value != null) {
+                dialect.put(dialectKey, value);
+            } else if (dialect.containsKey(dialectKey)) {
+                filled.put(dialectKey, dialect.get(dialectKey));
+            }
+        }
+        return filled;
+    }
+
+    private static Schema schema(String key, DataSource dataSource) throws SQLException {
+        Schema schema = schemas.get(key);
+        if (schema != null && schema.loadedAt > 0) {
+            return schema;
+        }
+        Schema loaded = load(dataSource);
+        // Keep the DDL loaded meanwhile
+        if (schema != null) {
+            loaded.ddl.putAll(schema.ddl);
+        }
+        schemas.put(key, loaded);
+        return loaded;
+    }
+
+    private static Schema load(DataSource dataSource) throws SQLException {
+        long start = System.currentTimeMillis();
+        Schema schema = new Schema();
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData meta = conn.getMetaData();
+            String catalog = conn.getCatalog();
+            String schemaName = conn.getSchema();
+            try (ResultSet rs = meta.getTables(catalog, schemaName, "%", new String[] { "TABLE", "VIEW" })) {
+                while (rs.next()) {
+                    Map<String, Object> table = new HashMap<>();
+                    table.put("name", rs.getString("TABLE_NAME"));
+                    table.put("type", rs.getString("TABLE_TYPE"));
+                    table.put("remarks", rs.getString("REMARKS"));
+                    schema.tables.add(table);
+                }
+            }
+            try (ResultSet rs = meta.getColumns(catalog, schemaName, "%", "%")) {
+                while (rs.next()) {
+                    Map<String, Object> column = new HashMap<>();
+                    column.put("name", rs.getString("COLUMN_NAME"));
+                    column.put("type", rs.getInt("DATA_TYPE"));
+                    column.put("typeName", rs.getString("TYPE_NAME"));
+                    column.put("size", rs.getInt("COLUMN_SIZE"));
+                    column.put("decimalDigits", rs.getInt("DECIMAL_DIGITS"));
+                    column.put("nullable", rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+                    column.put("defaultValue", rs.getString("COLUMN_DEF"));
+                    column.put("remarks", rs.getString("REMARKS"));
+                    column.put("position", rs.getInt("ORDINAL_POSITION"));
+                    schema.columns.computeIfAbsent(rs.getString("TABLE_NAME"), k -> new ArrayList<>()).add(column);
+                }
+            }
+            for (List<Map<String, Object>> columns : schema.columns.values()) {
+                columns.sort((a, b) -> Integer.compare((Integer) a.get("position"), (Integer) b.get("position")));
+            }
+            try {
+                schema.primaryKeys.putAll(readPrimaryKeys(meta.getPrimaryKeys(catalog, schemaName, null)));
+            } catch (SQLException e) {
+                // The driver needs a table name, the keys are read per table
+                schema.primaryKeys = null;
+            }
+            // Some drivers, like Oracle's, return no keys at all without a
+            // table name instead of failing
+            if (schema.primaryKeys != null && schema.primaryKeys.isEmpty() && !schema.tables.isEmpty()) {
+                schema.primaryKeys = null;
+            }
+        }
+        schema.loadedAt = System.currentTimeMillis();
+        System.out.println("Metadata loaded: " + schema.tables.size() + " tables in " + (schema.loadedAt - start)
+                + "ms");
+        return schema;
+    }
+
+    private static Map<String, List<String>> readPrimaryKeys(ResultSet rs) throws SQLException {
+        Map<String, TreeMap<Integer, String>> ordered = new HashMap<>();
+        try {
+            while (rs.next()) {
+                ordered.computeIfAbsent(rs.getString("TABLE_NAME"), k -> new TreeMap<>())
+                        .put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+            }
+        } finally {
+            rs.close();
+        }
+        Map<String, List<String>> keys = new HashMap<>();
+        for (Map.Entry<String, TreeMap<Integer, String>> entry : ordered.entrySet()) {
+            keys.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,118 @@
+package com.udb.server.service.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The RowCountEstimator class returns the number of rows of a table.
+ * By default the number is read from the catalog statistics of the database
+ * (information_schema.TABLES, pg_class.reltuples, sys.partitions,
+ * ALL_TABLES.NUM_ROWS), which costs one catalog lookup instead of a full scan.
+ * An exact SELECT COUNT(*) is only run when it is asked for, or when the
+ * database has no statistics for the table.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class RowCountEstimator {
+
+    /**
+     * Get the number of rows of a table.
+     *
+     * @param conn
+     * @param table
+     * @param exact run SELECT COUNT(*) instead of reading the statistics
+     * @return
+     * @throws SQLException
+     */
+    public static long count(Connection conn, String table, boolean exact) throws SQLException {
+        if (!exact) {
+            long estimate = estimate(conn, table);
+            if (estimate >= 0) {
+                return estimate;
+            }
+        }
+        return exactCount(conn, table);
+    }
+
+    /**
+     * Get the number of rows of a table from the catalog statistics.
+     *
+     * @param conn
+     * @param table
+     * @return the estimate, or -1 if the database has no statistics for it
+     */
+    public static long estimate(Connection conn, String table) {
+        String schema = null;
+        String name = table.trim();
+        boolean quoted = name.indexOf('"') >= 0;
+        name = name.replaceAll("[`\"\\[\\]]", "");
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            schema = name.substring(0, dot);
+            name = name.substring(dot + 1);
+        }
+        try {
+            switch (DatabaseFamily.of(conn)) {
+                case MYSQL, MARIADB:
+                    return queryLong(conn, "SELECT TABLE_ROWS FROM information_schema.TABLES"
+                            + " WHERE TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME = ?", schema, name);
+                case POSTGRESQL:
+                    // reltuples is -1 for tables that have never been analyzed
+                    return queryLong(conn, "SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)",
+                            schema == null ? name : schema + "." + name);
+                case SQLSERVER:
+                    return queryLong(conn, "SELECT SUM(rows) FROM sys.partitions"
+                            + " WHERE object_id = OBJECT_ID(?) AND index_id IN (0, 1)",
+                            schema == null ? name : schema + "." + name);
+                case ORACLE:
+                    if (!quoted) {
+                        name = name.toUpperCase();
+                        schema = schema == null ? null : schema.toUpperCase();
+                    }
+                    return queryLong(conn, "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER ="
+                            + " COALESCE(?, SYS_CONTEXT('USERENV', 'CURRENT_SCHEMA')) AND TABLE_NAME = ?",
+                            schema, name);
+                default:
+                    return -1;
+            }
+        } catch (SQLException e) {
+            System.out.println("Estimate row count failed:" + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Get the exact number of rows of a table with SELECT COUNT(*).
+     *
+     * @param conn
+     * @param table
+     * @return
+     * @throws SQLException
+     */
+    public static long exactCount(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql, String... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    long value = rs.getLong(1);
+                    return rs.wasNull() ? -1 : value;
+                }
+                return -1;
+            }
+        }
+    }
+}
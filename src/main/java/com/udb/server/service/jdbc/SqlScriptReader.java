@@ -0,0 +1,251 @@
+package com.udb.server.service.jdbc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The SqlScriptReader class splits a SQL script into statements while it is
+ * being read, so that dump files of any size can be replayed without loading
+ * them into memory.
+ *
+ * Statements are separated by semicolons outside of quotes and comments.
+ * Line comments that start a statement ("-- ...") are returned as items of
+ * their own, so callers can follow the section markers written by DumpThread.
+ * The script is decoded as UTF-8 and the byte offsets of every item are
+ * tracked, so a caller can index a file once and come back to a part of the
+ * script later with {@link #seek(long)}.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class SqlScriptReader implements Closeable {
+    private final FileInputStream file;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int bufferLength;
+    private int bufferIndex;
+    // Byte offset of the next unread byte
+    private long position;
+    private long itemStart;
+    // Low surrogate of a decoded supplementary character, or -1
+    private int pending = -1;
+    private int peeked = -1;
+    private long peekedPosition;
+
+    public SqlScriptReader(File file) throws IOException {
+        this.file = new FileInputStream(file);
+    }
+
+    /**
+     * Get the byte offset where the last returned item started.
+     *
+     * @return
+     */
+    public long getItemStart() {
+        return itemStart;
+    }
+
+    /**
+     * Get the byte offset right after the last returned item.
+     *
+     * @return
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Move to a byte offset returned by {@link #getItemStart()}.
+     *
+     * @param offset
+     * @throws IOException
+     */
+    public void seek(long offset) throws IOException {
+        file.getChannel().position(offset);
+        position = offset;
+        bufferLength = 0;
+        bufferIndex = 0;
+        pending = -1;
+        peeked = -1;
+    }
+
+    /**
+     * Read the next item of the script.
+     * It is either a comment line starting with "--" or a statement without
+     * its trailing semicolon.
+     *
+     * @return the item, or null at the end of the script
+     * @throws IOException
+     */
+    public String next() throws IOException {
+        long start = position;
+        int c = read();
+        while (c >= 0 && Character.isWhitespace(c)) {
+            start = position;
+            c = read();
+        }
+        if (c < 0) {
+            return null;
+        }
+        itemStart = start;
+        StringBuilder sb = new StringBuilder();
+        if (c == '-' && peek() == '-') {
+            // A comment line
+            while (c >= 0 && c != '\n') {
+                sb.append((char) c);
+                c = read();
+            }
+            return trimTrailing(sb);
+        }
+        while (c >= 0) {
+            if (c == ';') {
+                return trimTrailing(sb);
+            }
+            sb.append((char) c);
+            if (c == '\'' || c == '"' || c == '`') {
+                readQuoted(c, sb);
+            } else if (c == '-' && peek() == '-') {
+                while ((c = read()) >= 0 && c != '\n') {
+                    sb.append((char) c);
+                }
+                if (c < 0) {
+                    break;
+                }
+                sb.append('\n');
+            } else if (c == '/' && peek() == '*') {
+                sb.append((char) read());
+                int prev = 0;
+                while ((c = read()) >= 0) {
+                    sb.append((char) c);
+                    if (prev == '*' && c == '/') {
+                        break;
+                    }
+                    prev = c;
+                }
+            }
+            c = read();
+        }
+        String statement = trimTrailing(sb);
+        return statement.isEmpty() ? null : statement;
+    }
+
+    private void readQuoted(int quote, StringBuilder sb) throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            sb.append((char) c);
+            if (c == quote) {
+                // A doubled quote is an escaped quote
+                if (peek() == quote) {
+                    sb.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static String trimTrailing(StringBuilder sb) {
+        int end = sb.length();
+        while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) {
+            end--;
+        }
+        return sb.substring(0, end);
+    }
+
+    private int read() throws IOException {
+        if (peeked >= 0) {
+            int c = peeked;
+            peeked = -1;
+            position = peekedPosition;
+            return c;
+        }
+        return decode();
+    }
+
+    private int peek() throws IOException {
+        if (peeked < 0) {
+            long before = position;
+            peeked = decode();
+            peekedPosition = position;
+            position = before;
+        }
+        return peeked;
+    }
+
+    /**
+     * Decode the next character. Malformed bytes are read as U+FFFD.
+     */
+    private int decode() throws IOException {
+        if (pending >= 0) {
+            int c = pending;
+            pending = -1;
+            return c;
+        }
+        int b = readByte();
+        if (b < 0x80) {
+            return b;
+        }
+        int length;
+        int code;
+        if (b >= 0xF0 && b < 0xF8) {
+            length = 3;
+            code = b & 0x07;
+        } else if (b >= 0xE0) {
+            length = b < 0xF0 ? 2 : 0;
+            code = b & 0x0F;
+        } else if (b >= 0xC0) {
+            length = 1;
+            code = b & 0x1F;
+        } else {
+            length = 0;
+            code = 0;
+        }
+        if (length == 0) {
+            return 0xFFFD;
+        }
+        for (int i = 0; i < length; i++) {
+            int next = peekByte();
+            if ((next & 0xC0) != 0x80) {
+                return 0xFFFD;
+            }
+            code = (code << 6) | (readByte() & 0x3F);
+        }
+        if (code > 0xFFFF) {
+            pending = Character.lowSurrogate(code);
+            return Character.highSurrogate(code);
+        }
+        return code;
+    }
+
+    private int readByte() throws IOException {
+        if (bufferIndex >= bufferLength && !fill()) {
+            return -1;
+        }
+        position++;
+        return buffer[bufferIndex++] & 0xFF;
+    }
+
+    private int peekByte() throws IOException {
+        if (bufferIndex >= bufferLength && !fill()) {
+            return -1;
+        }
+        return buffer[bufferIndex] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n = file.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        bufferLength = n;
+        bufferIndex = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
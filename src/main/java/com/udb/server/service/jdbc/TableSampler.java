@@ -0,0 +1,224 @@
+package com.udb.server.service.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The TableSampler class builds the query of a preview of a table: a sample of
+ * its rows spread over the whole table, read at a cost that does not grow with
+ * the size of the table.
+ * PostgreSQL, SQL Server and Oracle sample blocks of the table with
+ * TABLESAMPLE or SAMPLE BLOCK. MySQL, MariaDB and SQLite split an integer
+ * primary key into equal strata, and read a short run of rows from a random
+ * point of every stratum, never past its end. A table without such a
+ * key, of another database, or without a row estimate, is previewed by its
+ * first rows, and the preview says it is not sampled.
+ * The total is the estimate of the catalog statistics, never a COUNT(*).
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class TableSampler {
+    // Strata of the key read by a preview
+    private static final int RANGES = 10;
+    // Block sampling returns fewer rows than asked for on small blocks
+    private static final double OVERSAMPLE = 3;
+    private static final Random random = new Random();
+
+    /**
+     * The query of a preview and how it samples.
+     */
+    public static class Sample {
+        private final String sql;
+        private final int maxRows;
+        private final Map<String, Object> info = new HashMap<>();
+
+        private Sample(String sql, int maxRows, String method, boolean sampled, long estimatedRows) {
+            this.sql = sql;
+            this.maxRows = maxRows;
+            info.put("sampled", sampled);
+            info.put("sampleMethod", method);
+            info.put("estimatedRows", estimatedRows);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getMaxRows() {
+            return maxRows;
+        }
+
+        /**
+         * The fields added to the result of the preview: sampled, sampleMethod,
+         * estimatedRows (-1 if unknown) and samplePercent for block sampling.
+         *
+         * @return
+         */
+        public Map<String, Object> getInfo() {
+            return info;
+        }
+    }
+
+    /**
+     * Plan the preview of a table.
+     *
+     * @param conn
+     * @param table
+     * @param rows  the number of rows of the preview
+     * @return
+     * @throws SQLException
+     */
+    public static Sample plan(Connection conn, String table, int rows) throws SQLException {
+        long estimate = RowCountEstimator.estimate(conn, table);
+        String all = "SELECT * FROM " + table;
+        if (estimate >= 0 && estimate <= rows) {
+            return new Sample(all, rows, "full", false, estimate);
+        }
+        DatabaseFamily family = DatabaseFamily.of(conn);
+        if (estimate < 0 && family != DatabaseFamily.MYSQL && family != DatabaseFamily.MARIADB
+                && family != DatabaseFamily.SQLITE) {
+            // Without statistics (a PostgreSQL table never analyzed) a block
+            // sample of a guessed share is often empty
+            return new Sample(firstRows(family, table, rows), rows, "first rows", false, estimate);
+        }
+        // The share of the table to sample, in percent
+        double percent = estimate > 0 ? Math.min(100, rows * OVERSAMPLE * 100 / estimate) : 1;
+        percent = Math.max(percent, 0.0001);
+        String share = String.format(java.util.Locale.ROOT, "%.4f", percent);
+        Sample sample;
+        switch (family) {
+            case POSTGRESQL:
+                sample = new Sample(all + " TABLESAMPLE SYSTEM (" + share + ") LIMIT " + rows, rows,
+                        "tablesample", true, estimate);
+                break;
+            case SQLSERVER:
+                sample = new Sample("SELECT TOP " + rows + " * FROM " + table + " TABLESAMPLE (" + share
+                        + " PERCENT)", rows, "tablesample", true, estimate);
+                break;
+            case ORACLE:
+                // SAMPLE BLOCK takes less than 100 percent
+                share = String.format(java.util.Locale.ROOT, "%.4f", Math.min(percent, 99.9999));
+                sample = new Sample(all + " SAMPLE BLOCK (" + share + ")", rows, "sample block", true, estimate);
+                break;
+            case MYSQL:
+            case MARIADB:
+            case SQLITE:
+                return keyRanges(conn, table, rows, estimate);
+            default:
+                // No known way to sample or to limit a subquery
+                return new Sample(all, rows, "first rows", false, estimate);
+        }
+        sample.info.put("samplePercent", percent);
+        return sample;
+    }
+
+    /**
+     * The first rows of a table, limited in the query where the database has a
+     * way to, and by the maximum rows of the statement otherwise.
+     */
+    private static String firstRows(DatabaseFamily family, String table, int rows) {
+        switch (family) {
+            case POSTGRESQL:
+                return "SELECT * FROM " + table + " LIMIT " + rows;
+            case SQLSERVER:
+                return "SELECT TOP " + rows + " * FROM " + table;
+            case ORACLE:
+                return "SELECT * FROM " + table + " WHERE ROWNUM <= " + rows;
+            default:
+                return "SELECT * FROM " + table;
+        }
+    }
+
+    /**
+     * Read a run of rows from a random point of every stratum of an integer
+     * primary key.
+     */
+    private static Sample keyRanges(Connection conn, String table, int rows, long estimate) throws SQLException {
+        String key = integerKey(conn, table);
+        String first = "SELECT * FROM " + table;
+        if (key == null) {
+            return new Sample(first, rows, "first rows", false, estimate);
+        }
+        long min;
+        long max;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MIN(" + key + "), MAX(" + key + ") FROM " + table)) {
+            if (!rs.next() || rs.getObject(1) == null) {
+                return new Sample(first, rows, "first rows", false, estimate);
+            }
+            min = rs.getLong(1);
+            max = rs.getLong(2);
+        }
+        // The strata do not overlap, so no row is read twice
+        int strata = (int) Math.min(RANGES, (double) max - min + 1);
+        double width = ((double) max - min + 1) / strata;
+        int perRange = Math.max(1, (rows + strata - 1) / strata);
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < strata; i++) {
+            long low = min + (long) (i * width);
+            long high = i == strata - 1 ? max : min + (long) ((i + 1) * width) - 1;
+            long point = low + (long) (random.nextDouble() * (high - low + 1));
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT * FROM (SELECT * FROM ").append(table).append(" WHERE ").append(key).append(" >= ")
+                    .append(point).append(" AND ").append(key).append(" <= ").append(high).append(" ORDER BY ")
+                    .append(key).append(" LIMIT ").append(perRange).append(") s").append(i);
+        }
+        return new Sample(sql.toString(), rows, "key ranges", true, estimate);
+    }
+
+    /**
+     * The quoted name of the primary key of a table if it is a single integer
+     * column.
+     */
+    private static String integerKey(Connection conn, String table) throws SQLException {
+        String name = table.trim().replaceAll("[`\"\\[\\]]", "");
+        String schema = null;
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            schema = name.substring(0, dot);
+            name = name.substring(dot + 1);
+        }
+        DatabaseMetaData meta = conn.getMetaData();
+        String catalog = schema != null ? schema : conn.getCatalog();
+        String column = null;
+        try (ResultSet rs = meta.getPrimaryKeys(catalog, null, name)) {
+            while (rs.next()) {
+                if (column != null) {
+                    // A composite key
+                    return null;
+                }
+                column = rs.getString("COLUMN_NAME");
+            }
+        }
+        if (column == null) {
+            return null;
+        }
+        try (ResultSet rs = meta.getColumns(catalog, null, name, column)) {
+            if (!rs.next()) {
+                return null;
+            }
+            switch (rs.getInt("DATA_TYPE")) {
+                case java.sql.Types.TINYINT:
+                case java.sql.Types.SMALLINT:
+                case java.sql.Types.INTEGER:
+                case java.sql.Types.BIGINT:
+                    break;
+                default:
+                    return null;
+            }
+        }
+        String quote = meta.getIdentifierQuoteString();
+        quote = quote == null ? "" : quote.trim();
+        return quote + column + quote;
+    }
+}
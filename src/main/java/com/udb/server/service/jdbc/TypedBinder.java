@@ -0,0 +1,147 @@
+package com.udb.server.service.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * The TypedBinder class binds imported values to the parameters of an INSERT
+ * statement according to the field type catalog of the import mapping
+ * (Integer, Fixed-Point, Floating-Point, Bit-Value, Binary, String, ...).
+ * Values read from files are usually text. They are converted to the Java type
+ * of their catalog here, so that the driver sends typed values instead of
+ * quoted strings. A value that cannot be converted is bound as a string and
+ * left to the database.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class TypedBinder {
+    private final String[] catalogs;
+
+    /**
+     * @param mappingArray the import mapping, one object with a catalog per
+     *                     column
+     */
+    public TypedBinder(JSONArray mappingArray) {
+        this.catalogs = new String[mappingArray.size()];
+        for (int i = 0; i < mappingArray.size(); i++) {
+            JSONObject mappingObj = mappingArray.getJSONObject(i);
+            String catalog = mappingObj.getString("catalog");
+            this.catalogs[i] = catalog == null ? "String" : catalog;
+        }
+    }
+
+    /**
+     * Build the INSERT statement with one parameter per mapped column.
+     *
+     * @param table
+     * @param mappingArray
+     * @param identifierQuoteSymbol
+     * @return
+     */
+    public static String insertSql(String table, JSONArray mappingArray, String identifierQuoteSymbol) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < mappingArray.size(); i++) {
+            sql.append(identifierQuoteSymbol).append(mappingArray.getJSONObject(i).getString("name"))
+                    .append(identifierQuoteSymbol);
+            if (i < mappingArray.size() - 1) {
+                sql.append(",");
+            }
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < mappingArray.size(); i++) {
+            sql.append(i < mappingArray.size() - 1 ? "?," : "?");
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * Bind the value of a mapped column.
+     *
+     * @param ps
+     * @param column the position of the column in the mapping, from 0
+     * @param value
+     * @throws SQLException
+     */
+    public void bind(PreparedStatement ps, int column, Object value) throws SQLException {
+        String catalog = catalogs[column];
+        int index = column + 1;
+        boolean isString = !isNumeric(catalog) && !catalog.equals("Bit-Value") && !catalog.equals("Binary");
+        if (value == null || (!isString && value instanceof String && ((String) value).trim().isEmpty())) {
+            ps.setNull(index, sqlType(catalog));
+            return;
+        }
+        try {
+            switch (catalog) {
+                case "Integer":
+                    if (value instanceof Number) {
+                        ps.setLong(index, ((Number) value).longValue());
+                    } else if (value instanceof Boolean) {
+                        ps.setLong(index, (Boolean) value ? 1 : 0);
+                    } else {
+                        ps.setLong(index, Long.parseLong(value.toString().trim()));
+                    }
+                    return;
+                case "Fixed-Point":
+                    ps.setBigDecimal(index, value instanceof BigDecimal ? (BigDecimal) value
+                            : new BigDecimal(value.toString().trim()));
+                    return;
+                case "Floating-Point":
+                    ps.setDouble(index, value instanceof Number ? ((Number) value).doubleValue()
+                            : Double.parseDouble(value.toString().trim()));
+                    return;
+                case "Bit-Value":
+                    String bit = value.toString().trim();
+                    if (value instanceof Boolean || bit.equalsIgnoreCase("true") || bit.equalsIgnoreCase("false")) {
+                        ps.setBoolean(index, Boolean.parseBoolean(bit));
+                    } else {
+                        ps.setLong(index, Long.parseLong(bit));
+                    }
+                    return;
+                case "Binary":
+                    if (value instanceof byte[]) {
+                        ps.setBytes(index, (byte[]) value);
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // Leave the conversion to the database
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            ps.setString(index, JSON.toJSONString(value));
+        } else {
+            ps.setString(index, value.toString());
+        }
+    }
+
+    private static boolean isNumeric(String catalog) {
+        return catalog.equals("Integer") || catalog.equals("Fixed-Point") || catalog.equals("Floating-Point");
+    }
+
+    private static int sqlType(String catalog) {
+        switch (catalog) {
+            case "Integer":
+                return Types.BIGINT;
+            case "Fixed-Point":
+                return Types.DECIMAL;
+            case "Floating-Point":
+                return Types.DOUBLE;
+            case "Bit-Value":
+                return Types.BIT;
+            case "Binary":
+                return Types.VARBINARY;
+            default:
+                return Types.VARCHAR;
+        }
+    }
+}
@@ -0,0 +1,784 @@
+package com.udb.server.service.thread;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.server.service.BaseService;
+import com.udb.server.service.ComThread;
+import com.udb.server.service.jdbc.DatabaseFamily;
+import com.udb.server.service.jdbc.FetchStrategy;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.udb.server.service.jdbc.RowCountEstimator;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * This class extends the Thread class and is used to check that tables of two
+ * datasources hold the same rows, without reading them all.
+ * Each table is split into ranges of its key, of about chunkSize rows, and the
+ * ranges are compared in parallel, each worker with its own connection to both
+ * datasources. When both datasources are MySQL, MariaDB or PostgreSQL of the
+ * same family, each side sums a hash of the rows of a range in the database,
+ * and only the ranges whose count or sum differ are read to find the rows that
+ * are missing, extra or different. Between other databases the values do not
+ * hash alike on both sides, so every range is read and compared row by row.
+ * The key is the primary key of the source table unless keyColumns is given.
+ * Only a few ranges are compared ahead of the one being added up, and at most
+ * MAX_PENDING unmatched keys are kept per side, so a table compared against an
+ * empty target does not fill the memory. The task fails when a table fails.
+ */
+public class CompareThread extends ComThread {
+    // Keys reported per kind of difference and table
+    private static final int MAX_SAMPLES = 100;
+    // Unmatched keys kept per side and table to match the keys that sort into
+    // another range on the other side, beyond that they are only counted
+    private static final int MAX_PENDING = 10000;
+
+    private JSONObject datasourceJson;
+    private JSONObject targetDatasourceJson;
+    private JSONArray tables;
+    private List<String> keyColumns;
+    private int parallel = 2;
+    private long chunkSize = 10000;
+
+    private Map<String, Map<String, Object>> tableProgress = new ConcurrentHashMap<>();
+    // Source and target connections of the workers
+    private BlockingQueue<Connection[]> pairs;
+    private boolean databaseHash;
+    private String sourceQuote;
+    private String targetQuote;
+    private int failedTables;
+
+    public CompareThread(String sessionId, Map<String, Object> body) {
+        System.out.println("CompareThread created");
+        System.out.println("sessionId: " + sessionId);
+        this.sessionId = sessionId;
+        this.datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        this.targetDatasourceJson = BaseService.parseDatasource(body.get("targetDatasource").toString());
+        this.tables = JSONArray.parseArray(body.get("tables").toString());
+        if (body.containsKey("keyColumns")) {
+            this.keyColumns = new ArrayList<>();
+            for (String column : body.get("keyColumns").toString().split(",")) {
+                this.keyColumns.add(column.trim());
+            }
+        }
+        if (body.containsKey("parallel")) {
+            this.parallel = Math.max(1, Integer.parseInt(body.get("parallel").toString()));
+        }
+        // Every worker holds a connection to both sides, twice on the same
+        // datasource
+        int workerLimit = Math.min(BaseService.getWorkerLimit(datasourceJson),
+                BaseService.getWorkerLimit(targetDatasourceJson));
+        if (BaseService.getDataSourceKey(datasourceJson).equals(BaseService.getDataSourceKey(targetDatasourceJson))) {
+            workerLimit = Math.max(1, workerLimit / 2);
+        }
+        this.parallel = Math.min(parallel, workerLimit);
+        if (body.containsKey("chunkSize")) {
+            this.chunkSize = Math.max(1, Long.parseLong(body.get("chunkSize").toString()));
+        }
+    }
+
+    public String getType() {
+        return "compare";
+    }
+
+    public String getLable() {
+        return datasourceJson.getString("name") + " <> " + targetDatasourceJson.getString("name");
+    }
+
+    @Override
+    public String getDatasourceKey() {
+        return BaseService.getDataSourceKey(datasourceJson);
+    }
+
+    /**
+     * Every worker holds a connection to both sides.
+     */
+    @Override
+    public Map<String, Integer> getWorkerConnections() {
+        Map<String, Integer> workers = new HashMap<>();
+        workers.merge(getDatasourceKey(), parallel, Integer::sum);
+        workers.merge(BaseService.getDataSourceKey(targetDatasourceJson), parallel, Integer::sum);
+        return workers;
+    }
+
+    /**
+     * A range of the first key column, from lo included to hi excluded, null for
+     * no bound.
+     */
+    private static class Chunk {
+        private final Object lo;
+        private final Object hi;
+
+        private Chunk(Object lo, Object hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+    }
+
+    /**
+     * The hash of a row and the values of its key.
+     */
+    private static class Pending {
+        private final String hash;
+        private final Object[] key;
+
+        private Pending(String hash, Object[] key) {
+            this.hash = hash;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The rows of a range that do not match, by the text of their key.
+     */
+    private static class ChunkDiff {
+        private boolean same = true;
+        private long sourceRows;
+        private long targetRows;
+        private final Map<String, Pending> missing = new HashMap<>();
+        private final Map<String, Pending> extra = new HashMap<>();
+        private final List<String> different = new ArrayList<>();
+    }
+
+    /**
+     * The differences of a table, added up range by range. At most MAX_PENDING
+     * unmatched keys are kept per side, the others are only counted.
+     */
+    private static class TableDiff {
+        private long sourceRows;
+        private long targetRows;
+        private long missingRows;
+        private long extraRows;
+        private long differentRows;
+        private final Map<String, Pending> missing = new HashMap<>();
+        private final Map<String, Pending> extra = new HashMap<>();
+        private final List<String> different = new ArrayList<>();
+        private boolean missingOverflow;
+        private boolean extraOverflow;
+
+        private void add(ChunkDiff diff) {
+            sourceRows += diff.sourceRows;
+            targetRows += diff.targetRows;
+            for (String key : diff.different) {
+                different(key);
+            }
+            for (Map.Entry<String, Pending> entry : diff.missing.entrySet()) {
+                Pending target = extra.remove(entry.getKey());
+                if (target != null) {
+                    // A key sorted into another range on the other side
+                    extraRows--;
+                    if (!target.hash.equals(entry.getValue().hash)) {
+                        different(entry.getKey());
+                    }
+                } else {
+                    missingRows++;
+                    if (missing.size() < MAX_PENDING) {
+                        missing.put(entry.getKey(), entry.getValue());
+                    } else {
+                        missingOverflow = true;
+                    }
+                }
+            }
+            for (Map.Entry<String, Pending> entry : diff.extra.entrySet()) {
+                Pending source = missing.remove(entry.getKey());
+                if (source != null) {
+                    missingRows--;
+                    if (!source.hash.equals(entry.getValue().hash)) {
+                        different(entry.getKey());
+                    }
+                } else {
+                    extraRows++;
+                    if (extra.size() < MAX_PENDING) {
+                        extra.put(entry.getKey(), entry.getValue());
+                    } else {
+                        extraOverflow = true;
+                    }
+                }
+            }
+        }
+
+        private void different(String key) {
+            differentRows++;
+            if (different.size() < MAX_SAMPLES) {
+                different.add(key);
+            }
+        }
+    }
+
+    @Override
+    protected void execute() {
+        ExecutorService executor = null;
+        try {
+            startTime = new java.util.Date();
+            System.out.println("Start executing");
+            HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
+            if (dataSource == null) {
+                System.out.println("datasource does not exist");
+                message = "datasource does not exist";
+                endTime = new java.util.Date();
+                status = 830;
+                return;
+            }
+            this.conn = dataSource.getConnection();
+            if (results == null) {
+                results = new java.util.concurrent.LinkedBlockingQueue<>();
+            }
+            detail.put("tables", tableProgress);
+            pairs = new ArrayBlockingQueue<>(parallel);
+            for (int i = 0; i < parallel; i++) {
+                Connection sourceConn = BaseService.openConnection(datasourceJson);
+                workerConns.add(sourceConn);
+                Connection targetConn = BaseService.openConnection(targetDatasourceJson);
+                workerConns.add(targetConn);
+                pairs.put(new Connection[] { sourceConn, targetConn });
+            }
+            Connection[] pair = pairs.peek();
+            DatabaseFamily sourceFamily = DatabaseFamily.of(pair[0]);
+            databaseHash = sourceFamily == DatabaseFamily.of(pair[1]) && hashExpression(sourceFamily,
+                    new ArrayList<>(), "") != null;
+            sourceQuote = quoteOf(pair[0]);
+            targetQuote = quoteOf(pair[1]);
+            executor = Executors.newFixedThreadPool(parallel);
+            for (int i = 0; i < tables.size(); i++) {
+                String sourceTable;
+                String targetTable;
+                Object table = tables.get(i);
+                if (table instanceof JSONObject) {
+                    sourceTable = ((JSONObject) table).getString("source");
+                    targetTable = ((JSONObject) table).getString("target");
+                } else {
+                    sourceTable = table.toString();
+                    targetTable = sourceTable;
+                }
+                message = "Compare table:" + sourceTable;
+                compareTable(dataSource, sourceTable, targetTable, executor);
+                progress = Math.round((i + 1) * 10000.0 / tables.size()) / 100.0;
+            }
+            if (failedTables > 0) {
+                throw new Exception(failedTables + " of " + tables.size() + " tables failed");
+            }
+            message = "Execute success";
+            status = 200;
+            endTime = new java.util.Date();
+            System.out.println("Execute success");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+            message = cause.getMessage();
+            status = 500;
+            endTime = new java.util.Date();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Connection workerConn : workerConns) {
+                try {
+                    workerConn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            workerConns.clear();
+            try {
+                if (conn != null) {
+                    conn.close();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void compareTable(HikariDataSource dataSource, String sourceTable, String targetTable,
+            ExecutorService executor) throws Exception {
+        long start = System.currentTimeMillis();
+        Map<String, Object> tableStatus = new ConcurrentHashMap<>();
+        tableStatus.put("status", "running");
+        tableProgress.put(sourceTable, tableStatus);
+        Map<String, Object> result = new HashMap<>();
+        result.put("table", sourceTable);
+        result.put("target", targetTable);
+        try {
+            List<String> columns = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT * FROM " + sourceTable + " WHERE 1=0")) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columns.add(metaData.getColumnName(i));
+                }
+            }
+            List<String> keys = keyColumns != null ? keyColumns
+                    : MetadataCache.getPrimaryKeys(getDatasourceKey(), dataSource, sourceTable);
+            if (keys.isEmpty()) {
+                throw new SQLException("No key to split the table, set keyColumns");
+            }
+            List<Chunk> chunks = planChunks(sourceTable, keys.get(0));
+            tableStatus.put("chunks", chunks.size());
+            AtomicLong compared = new AtomicLong();
+            AtomicLong differentChunks = new AtomicLong();
+            tableStatus.put("comparedChunks", compared);
+            tableStatus.put("differentChunks", differentChunks);
+            // A few ranges ahead of the one being added up, so that the
+            // differences of the whole table are never held at once
+            Deque<Future<ChunkDiff>> futures = new ArrayDeque<>();
+            TableDiff total = new TableDiff();
+            for (Chunk chunk : chunks) {
+                futures.add(executor.submit(() -> {
+                    Connection[] pair = pairs.take();
+                    try {
+                        ChunkDiff diff = compareChunk(pair, sourceTable, targetTable, columns, keys, chunk);
+                        if (!diff.same) {
+                            differentChunks.incrementAndGet();
+                        }
+                        return diff;
+                    } finally {
+                        pairs.put(pair);
+                        compared.incrementAndGet();
+                    }
+                }));
+                if (futures.size() >= parallel * 2) {
+                    total.add(futures.poll().get());
+                    checkLimits(total.sourceRows + total.targetRows, 0);
+                }
+            }
+            while (!futures.isEmpty()) {
+                total.add(futures.poll().get());
+                checkLimits(total.sourceRows + total.targetRows, 0);
+            }
+            boolean approximate = false;
+            if (total.missingOverflow && total.extraOverflow) {
+                // Keys that moved range may be counted as both missing and extra
+                approximate = true;
+            } else if (total.missingOverflow) {
+                // Every extra key is kept, look for it among the missing ones
+                matchMoved(total.extra, pairs.peek()[0], sourceTable, sourceQuote, columns, keys, total);
+            } else if (total.extraOverflow) {
+                matchMoved(total.missing, pairs.peek()[1], targetTable, targetQuote, columns, keys, total);
+            }
+            boolean same = total.missingRows == 0 && total.extraRows == 0 && total.differentRows == 0;
+            result.put("chunks", chunks.size());
+            result.put("differentChunks", differentChunks.get());
+            result.put("sourceRows", total.sourceRows);
+            result.put("targetRows", total.targetRows);
+            result.put("missingRows", total.missingRows);
+            result.put("extraRows", total.extraRows);
+            result.put("differentRows", total.differentRows);
+            result.put("missing", sample(total.missing.keySet()));
+            result.put("extra", sample(total.extra.keySet()));
+            result.put("different", total.different);
+            result.put("same", same);
+            if (approximate) {
+                result.put("approximate", true);
+            }
+            result.put("status", "success");
+            tableStatus.put("status", same ? "same" : "different");
+        } catch (Exception e) {
+            e.printStackTrace();
+            failedTables++;
+            Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+            tableStatus.put("status", "fail");
+            tableStatus.put("message", String.valueOf(cause.getMessage()));
+            result.put("status", "fail");
+            result.put("message", cause.getMessage());
+        } finally {
+            result.put("elapsed", System.currentTimeMillis() - start);
+            results.put(result);
+        }
+    }
+
+    /**
+     * Split the first key column into ranges of about chunkSize rows: evenly
+     * between the bounds for whole numbers, every chunkSize keys otherwise. The
+     * first and the last range are open, so that the target rows outside of the
+     * bounds of the source are compared too.
+     */
+    private List<Chunk> planChunks(String table, String key) throws Exception {
+        String quoted = sourceQuote + key + sourceQuote;
+        List<Object> bounds = new ArrayList<>();
+        long count = RowCountEstimator.count(conn, table, false);
+        Object min = null;
+        Object max = null;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT MIN(" + quoted + "), MAX(" + quoted + ") FROM " + table)) {
+            if (rs.next()) {
+                min = rs.getObject(1);
+                max = rs.getObject(2);
+            }
+        }
+        if (min != null && isWholeNumber(min) && isWholeNumber(max)) {
+            long lo = ((Number) min).longValue();
+            long hi = ((Number) max).longValue();
+            long chunks = Math.max(1, (count + chunkSize - 1) / chunkSize);
+            long step = Math.max(1, (hi - lo) / chunks + 1);
+            for (long bound = lo + step; bound <= hi && bound > lo; bound += step) {
+                bounds.add(bound);
+            }
+        } else if (min != null && count > chunkSize) {
+            FetchStrategy.prepareConnection(conn);
+            try (Statement stmt = FetchStrategy.createStatement(conn)) {
+                ResultSet rs = stmt.executeQuery("SELECT " + quoted + " FROM " + table + " ORDER BY " + quoted);
+                for (long i = 0; rs.next(); i++) {
+                    if (i > 0 && i % chunkSize == 0) {
+                        bounds.add(rs.getObject(1));
+                    }
+                }
+                rs.close();
+            }
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        Object lo = null;
+        for (Object bound : bounds) {
+            chunks.add(new Chunk(lo, bound));
+            lo = bound;
+        }
+        chunks.add(new Chunk(lo, null));
+        return chunks;
+    }
+
+    private ChunkDiff compareChunk(Connection[] pair, String sourceTable, String targetTable, List<String> columns,
+            List<String> keys, Chunk chunk) throws Exception {
+        ChunkDiff diff = new ChunkDiff();
+        if (databaseHash) {
+            BigDecimal[] source = hashChunk(pair[0], sourceTable, sourceQuote, columns, keys.get(0), chunk);
+            BigDecimal[] target = hashChunk(pair[1], targetTable, targetQuote, columns, keys.get(0), chunk);
+            diff.sourceRows = source[0].longValue();
+            diff.targetRows = target[0].longValue();
+            if (source[0].compareTo(target[0]) == 0 && source[1].compareTo(target[1]) == 0) {
+                return diff;
+            }
+        }
+        // Drill down: the source rows by key, then the target rows against them
+        diff.same = false;
+        Map<String, Pending> sourceRows = new HashMap<>();
+        List<Integer> keyIndexes = keyIndexes(columns, keys);
+        readChunk(pair[0], sourceTable, sourceQuote, columns, keys.get(0), chunk, row -> {
+            sourceRows.put(keyText(row, keyIndexes), new Pending(rowHash(row), keyValues(row, keyIndexes)));
+        });
+        diff.sourceRows = sourceRows.size();
+        long[] targetCount = new long[1];
+        readChunk(pair[1], targetTable, targetQuote, columns, keys.get(0), chunk, row -> {
+            targetCount[0]++;
+            String key = keyText(row, keyIndexes);
+            String hash = rowHash(row);
+            Pending source = sourceRows.remove(key);
+            if (source == null) {
+                diff.extra.put(key, new Pending(hash, keyValues(row, keyIndexes)));
+            } else if (!source.hash.equals(hash)) {
+                diff.different.add(key);
+            }
+        });
+        diff.targetRows = targetCount[0];
+        diff.missing.putAll(sourceRows);
+        diff.same = diff.missing.isEmpty() && diff.extra.isEmpty() && diff.different.isEmpty();
+        return diff;
+    }
+
+    /**
+     * Look up the kept unmatched keys of one side on the other side, where their
+     * key was only counted: a key found there sorted into another range, it is
+     * neither missing nor extra.
+     */
+    private void matchMoved(Map<String, Pending> kept, Connection other, String table, String quote,
+            List<String> columns, List<String> keys, TableDiff total) throws Exception {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columnList(columns, quote)).append(" FROM ")
+                .append(table).append(" WHERE ");
+        for (int i = 0; i < keys.size(); i++) {
+            sql.append(i > 0 ? " AND " : "").append(quote).append(keys.get(i)).append(quote).append(" = ?");
+        }
+        try (PreparedStatement ps = other.prepareStatement(sql.toString())) {
+            Iterator<Map.Entry<String, Pending>> it = kept.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Pending> entry = it.next();
+                for (int i = 0; i < entry.getValue().key.length; i++) {
+                    ps.setObject(i + 1, entry.getValue().key[i]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        continue;
+                    }
+                    Object[] row = new Object[columns.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    it.remove();
+                    total.missingRows--;
+                    total.extraRows--;
+                    if (!rowHash(row).equals(entry.getValue().hash)) {
+                        total.different(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private interface RowHandler {
+        void handle(Object[] row) throws Exception;
+    }
+
+    private void readChunk(Connection conn, String table, String quote, List<String> columns, String key,
+            Chunk chunk, RowHandler handler) throws Exception {
+        // A range holds about chunkSize rows, it is read without a cursor
+        String sql = "SELECT " + columnList(columns, quote) + " FROM " + table + rangeCondition(key, quote, chunk);
+        try (PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            FetchStrategy.apply(conn, ps, FetchStrategy.DEFAULT_FETCH_SIZE);
+            bindRange(ps, chunk);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Object[] row = new Object[columns.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    handler.handle(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the rows of a range and sum their hash in the database.
+     */
+    private BigDecimal[] hashChunk(Connection conn, String table, String quote, List<String> columns, String key,
+            Chunk chunk) throws Exception {
+        String sql = "SELECT COUNT(*), " + hashExpression(DatabaseFamily.of(conn), columns, quote) + " FROM "
+                + table + rangeCondition(key, quote, chunk);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bindRange(ps, chunk);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                BigDecimal sum = rs.getBigDecimal(2);
+                return new BigDecimal[] { BigDecimal.valueOf(rs.getLong(1)), sum == null ? BigDecimal.ZERO : sum };
+            }
+        }
+    }
+
+    /**
+     * The sum of the first 60 bits of the MD5 of every row, null for the
+     * databases that are compared row by row.
+     */
+    private static String hashExpression(DatabaseFamily family, List<String> columns, String quote) {
+        switch (family) {
+            case MYSQL:
+            case MARIADB:
+                // ISNULL tells a NULL from an empty string, CONCAT_WS skips NULLs
+                StringBuilder values = new StringBuilder();
+                for (String column : columns) {
+                    String quoted = quote + column + quote;
+                    values.append(",ISNULL(").append(quoted).append("),").append(quoted);
+                }
+                return "SUM(CAST(CONV(SUBSTRING(MD5(CONCAT_WS('#'" + values
+                        + ")),1,15),16,10) AS UNSIGNED))";
+            case POSTGRESQL:
+                return "SUM(('x' || SUBSTR(MD5(ROW(" + columnList(columns, quote)
+                        + ")::TEXT),1,15))::BIT(60)::BIGINT)";
+            default:
+                return null;
+        }
+    }
+
+    private static String columnList(List<String> columns, String quote) {
+        StringBuilder list = new StringBuilder();
+        for (String column : columns) {
+            if (list.length() > 0) {
+                list.append(",");
+            }
+            list.append(quote).append(column).append(quote);
+        }
+        return list.toString();
+    }
+
+    private static String rangeCondition(String key, String quote, Chunk chunk) {
+        String quoted = quote + key + quote;
+        if (chunk.lo != null && chunk.hi != null) {
+            return " WHERE " + quoted + " >= ? AND " + quoted + " < ?";
+        } else if (chunk.lo != null) {
+            return " WHERE " + quoted + " >= ?";
+        } else if (chunk.hi != null) {
+            return " WHERE " + quoted + " < ?";
+        }
+        return "";
+    }
+
+    private static void bindRange(PreparedStatement ps, Chunk chunk) throws SQLException {
+        int index = 1;
+        if (chunk.lo != null) {
+            ps.setObject(index++, chunk.lo);
+        }
+        if (chunk.hi != null) {
+            ps.setObject(index, chunk.hi);
+        }
+    }
+
+    private static boolean isWholeNumber(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return true;
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).bitLength() < 63;
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            return decimal.stripTrailingZeros().scale() <= 0
+                    && decimal.abs().compareTo(BigDecimal.valueOf(Long.MAX_VALUE / 2)) < 0;
+        }
+        return false;
+    }
+
+    private static String quoteOf(Connection conn) throws SQLException {
+        String quote = conn.getMetaData().getIdentifierQuoteString();
+        return quote == null || quote.trim().isEmpty() ? "" : quote.trim();
+    }
+
+    private static List<Integer> keyIndexes(List<String> columns, List<String> keys) {
+        List<Integer> keyIndexes = new ArrayList<>();
+        for (String key : keys) {
+            keyIndexes.add(columns.indexOf(key));
+        }
+        return keyIndexes;
+    }
+
+    private static Object[] keyValues(Object[] row, List<Integer> keyIndexes) {
+        Object[] key = new Object[keyIndexes.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = row[keyIndexes.get(i)];
+        }
+        return key;
+    }
+
+    private static String keyText(Object[] row, List<Integer> keyIndexes) {
+        StringBuilder key = new StringBuilder();
+        for (int index : keyIndexes) {
+            if (key.length() > 0) {
+                key.append(",");
+            }
+            key.append(text(row[index]));
+        }
+        return key.toString();
+    }
+
+    /**
+     * The MD5 of the values of a row, written alike whatever the driver returned
+     * for them.
+     */
+    private static String rowHash(Object[] row) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (Object value : row) {
+            text.append(value == null ? "\u0000" : text(value)).append('\u0001');
+        }
+        byte[] digest = MessageDigest.getInstance("MD5").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+        return new BigInteger(1, digest).toString(16);
+    }
+
+    private static String text(Object value) {
+        if (value == null) {
+            return "NULL";
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = ((BigDecimal) value).stripTrailingZeros();
+            return decimal.scale() < 0 ? decimal.setScale(0).toPlainString() : decimal.toPlainString();
+        } else if (value instanceof Float || value instanceof Double) {
+            return text(BigDecimal.valueOf(((Number) value).doubleValue()));
+        } else if (value instanceof Number) {
+            return value.toString();
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        } else if (value instanceof byte[]) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : (byte[]) value) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } else if (value instanceof java.sql.Timestamp) {
+            return dateTime(((java.sql.Timestamp) value).toLocalDateTime());
+        } else if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().toString();
+        } else if (value instanceof java.sql.Time) {
+            // toLocalTime() drops the milliseconds
+            return time(new java.sql.Timestamp(((java.sql.Time) value).getTime()).toLocalDateTime().toLocalTime());
+        } else if (value instanceof java.util.Date) {
+            return dateTime(LocalDateTime.ofInstant(((java.util.Date) value).toInstant(), ZoneId.systemDefault()));
+        } else if (value instanceof LocalDateTime) {
+            return dateTime((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            return value.toString();
+        } else if (value instanceof LocalTime) {
+            return time((LocalTime) value);
+        } else if (value instanceof OffsetDateTime) {
+            // In the zone of the JVM, like the drivers that return a Timestamp
+            return dateTime(((OffsetDateTime) value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime());
+        } else if (value instanceof ZonedDateTime) {
+            return dateTime(((ZonedDateTime) value).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime());
+        } else if (value instanceof Instant) {
+            return dateTime(LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault()));
+        }
+        return value.toString();
+    }
+
+    /**
+     * A date and time as yyyy-MM-dd HH:mm:ss[.fraction], or yyyy-MM-dd at
+     * midnight, so that a DATE read as a timestamp (Oracle) matches a DATE.
+     */
+    private static String dateTime(LocalDateTime value) {
+        if (value.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            return value.toLocalDate().toString();
+        }
+        return value.toLocalDate() + " " + time(value.toLocalTime());
+    }
+
+    /**
+     * A time as HH:mm:ss[.fraction], without the trailing zeros of the
+     * fraction.
+     */
+    private static String time(LocalTime value) {
+        String text = String.format("%02d:%02d:%02d", value.getHour(), value.getMinute(), value.getSecond());
+        if (value.getNano() > 0) {
+            String fraction = String.format("%09d", value.getNano()).replaceAll("0+$", "");
+            text += "." + fraction;
+        }
+        return text;
+    }
+
+    private static List<String> sample(Iterable<String> keys) {
+        List<String> sample = new ArrayList<>();
+        for (String key : keys) {
+            if (sample.size() >= MAX_SAMPLES) {
+                break;
+            }
+            sample.add(key);
+        }
+        return sample;
+    }
+}
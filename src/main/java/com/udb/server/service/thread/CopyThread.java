@@ -0,0 +1,490 @@
+package com.udb.server.service.thread;
+
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.server.service.BaseService;
+import com.udb.server.service.ComThread;
+import com.udb.server.service.jdbc.AdaptiveBatcher;
+import com.udb.server.service.jdbc.DatabaseFamily;
+import com.udb.server.service.jdbc.FetchStrategy;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * This class extends the Thread class and is used to copy tables from one
+ * datasource to another in a separate thread, without intermediate files.
+ * Rows are streamed from the source ResultSet into a bounded queue and written
+ * by several writers, each with its own target connection, using batched
+ * inserts or the bulk load API of the target database.
+ */
+public class CopyThread extends ComThread {
+    // Marks the end of the rows of a table
+    private static final List<Object[]> END = new ArrayList<>();
+    // The placeholders of a server prepared statement of MySQL
+    private static final int MAX_PLACEHOLDERS = 65535;
+    // Below the 4 MB max_allowed_packet of older servers
+    private static final long MAX_STATEMENT_BYTES = 2 * 1024 * 1024;
+
+    private JSONObject datasourceJson;
+    private JSONObject targetDatasourceJson;
+    private JSONArray tables;
+    private JSONObject typeMapping;
+    private boolean createTable;
+    private boolean bulkLoad;
+    private int parallel = 2;
+    private int batchSize = 1000;
+    private String identifierQuoteSymbol = "";
+
+    private Map<String, Map<String, Object>> tableProgress = new ConcurrentHashMap<>();
+
+    public CopyThread(String sessionId, Map<String, Object> body) {
+        System.out.println("CopyThread created");
+        System.out.println("sessionId: " + sessionId);
+        this.sessionId = sessionId;
+        this.datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        this.targetDatasourceJson = BaseService.parseDatasource(body.get("targetDatasource").toString());
+        this.tables = JSONArray.parseArray(body.get("tables").toString());
+        if (body.containsKey("typeMapping")) {
+            this.typeMapping = JSONObject.parseObject(body.get("typeMapping").toString());
+        }
+        this.createTable = body.containsKey("createTable") && body.get("createTable").toString().equals("true");
+        this.bulkLoad = body.containsKey("bulkLoad") && body.get("bulkLoad").toString().equals("true");
+        if (body.containsKey("parallel")) {
+            this.parallel = Math.max(1, Integer.parseInt(body.get("parallel").toString()));
+        }
+        // Writers are opened on the target
+        this.parallel = Math.min(parallel, BaseService.getWorkerLimit(targetDatasourceJson));
+        if (body.containsKey("batchSize")) {
+            this.batchSize = Math.max(1, Integer.parseInt(body.get("batchSize").toString()));
+        }
+        if (body.containsKey("identifierQuoteSymbol")) {
+            this.identifierQuoteSymbol = body.get("identifierQuoteSymbol").toString();
+        }
+    }
+
+    public String getType() {
+        return "copy";
+    }
+
+    public String getLable() {
+        return datasourceJson.getString("name") + " -> " + targetDatasourceJson.getString("name");
+    }
+
+    @Override
+    public String getDatasourceKey() {
+        // The source is read with its pool, the target has its own connection
+        return BaseService.getDataSourceKey(datasourceJson);
+    }
+
+    /**
+     * One writer per worker on the target.
+     */
+    @Override
+    public Map<String, Integer> getWorkerConnections() {
+        return Map.of(BaseService.getDataSourceKey(targetDatasourceJson), parallel);
+    }
+
+    @Override
+    protected void execute() {
+        ExecutorService executor = null;
+        try {
+            startTime = new java.util.Date();
+            System.out.println("Start executing");
+            HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
+            if (dataSource == null) {
+                System.out.println("datasource does not exist");
+                message = "datasource does not exist";
+                endTime = new java.util.Date();
+                status = 830;
+                return;
+            }
+            this.conn = dataSource.getConnection();
+            FetchStrategy.prepareConnection(conn);
+            if (results == null) {
+                results = new java.util.concurrent.LinkedBlockingQueue<>();
+            }
+            detail.put("tables", tableProgress);
+            List<Connection> writers = new ArrayList<>();
+            for (int i = 0; i < parallel; i++) {
+                Connection writerConn = BaseService.openConnection(targetDatasourceJson);
+                writerConn.setAutoCommit(false);
+                workerConns.add(writerConn);
+                writers.add(writerConn);
+            }
+            executor = Executors.newFixedThreadPool(parallel);
+            for (int i = 0; i < tables.size(); i++) {
+                String sourceTable;
+                String targetTable;
+                Object table = tables.get(i);
+                if (table instanceof JSONObject) {
+                    sourceTable = ((JSONObject) table).getString("source");
+                    targetTable = ((JSONObject) table).getString("target");
+                } else {
+                    sourceTable = table.toString();
+                    targetTable = sourceTable;
+                }
+                message = "Copy table:" + sourceTable;
+                copyTable(sourceTable, targetTable, writers, executor);
+                progress = Math.round((i + 1) * 10000.0 / tables.size()) / 100.0;
+            }
+            message = "Execute success";
+            status = 200;
+            endTime = new java.util.Date();
+            System.out.println("Execute success");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+            message = cause.getMessage();
+            status = 500;
+            endTime = new java.util.Date();
+        } finally {
+            if (createTable) {
+                MetadataCache.invalidate(BaseService.getDataSourceKey(targetDatasourceJson));
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Connection writerConn : workerConns) {
+                try {
+                    writerConn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            workerConns.clear();
+            try {
+                if (conn != null) {
+                    conn.close();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void copyTable(String sourceTable, String targetTable, List<Connection> writers,
+            ExecutorService executor) throws Exception {
+        long start = System.currentTimeMillis();
+        Map<String, Object> tableStatus = new ConcurrentHashMap<>();
+        tableStatus.put("rows", 0L);
+        tableStatus.put("status", "running");
+        tableProgress.put(sourceTable, tableStatus);
+        AtomicLong copied = new AtomicLong();
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(parallel * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        try (Statement stmt = FetchStrategy.createStatement(conn, batchSize)) {
+            watch(stmt);
+            ResultSet rs = stmt.executeQuery("SELECT * FROM " + sourceTable);
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            List<String> columns = new ArrayList<>();
+            int[] sqlTypes = new int[columnCount];
+            for (int i = 1; i <= columnCount; i++) {
+                columns.add(metaData.getColumnName(i));
+                sqlTypes[i - 1] = metaData.getColumnType(i);
+            }
+            if (createTable) {
+                createTargetTable(targetTable, metaData, writers.get(0));
+            }
+            for (Connection writerConn : writers) {
+                futures.add(executor.submit(() -> {
+                    write(writerConn, targetTable, columns, sqlTypes, queue, copied, tableStatus);
+                    return null;
+                }));
+            }
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            while (rs.next()) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    offer(queue, batch, futures);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                offer(queue, batch, futures);
+            }
+            rs.close();
+            for (int i = 0; i < writers.size(); i++) {
+                offer(queue, END, futures);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            tableStatus.put("status", "success");
+        } catch (Exception e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            tableStatus.put("status", "fail");
+            tableStatus.put("message", String.valueOf(e.getMessage()));
+            throw e;
+        } finally {
+            Map<String, Object> result = new HashMap<>();
+            result.put("table", sourceTable);
+            result.put("target", targetTable);
+            result.put("rows", copied.get());
+            result.put("status", tableStatus.get("status"));
+            result.put("message", tableStatus.get("message"));
+            result.put("elapsed", System.currentTimeMillis() - start);
+            results.put(result);
+        }
+    }
+
+    /**
+     * Hand a batch to the writers, giving up as soon as one of them has failed.
+     */
+    private void offer(BlockingQueue<List<Object[]>> queue, List<Object[]> batch, List<Future<?>> futures)
+            throws Exception {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<?> future : futures) {
+                if (future.isDone()) {
+                    // Rethrows the error of the writer
+                    future.get();
+                    throw new SQLException("Writer has stopped");
+                }
+            }
+        }
+    }
+
+    private void write(Connection writerConn, String table, List<String> columns, int[] sqlTypes,
+            BlockingQueue<List<Object[]>> queue, AtomicLong copied, Map<String, Object> tableStatus)
+            throws Exception {
+        String product = writerConn.getMetaData().getDatabaseProductName().toLowerCase();
+        String columnList = columnList(columns);
+        boolean copyIn = bulkLoad && product.contains("postgresql");
+        boolean multiRow = bulkLoad && (product.contains("mysql") || product.contains("mariadb"));
+        String insertSql = "INSERT INTO " + table + " (" + columnList + ") VALUES ";
+        String placeholders = "(" + "?,".repeat(columns.size() - 1) + "?)";
+        PreparedStatement ps = null;
+        int psRows = 0;
+        try {
+            while (true) {
+                List<Object[]> batch = queue.take();
+                if (batch == END) {
+                    break;
+                }
+                if (copyIn) {
+                    copyIn(writerConn, "COPY " + table + " (" + columnList + ") FROM STDIN WITH (FORMAT csv)",
+                            batch);
+                } else if (multiRow) {
+                    // Statements of many rows, within the placeholder limit of the
+                    // server and the packet size
+                    int statementRows = Math.min(batch.size(), MAX_PLACEHOLDERS / columns.size());
+                    long batchBytes = 0;
+                    for (Object[] row : batch) {
+                        for (Object value : row) {
+                            batchBytes += AdaptiveBatcher.sizeOf(value);
+                        }
+                    }
+                    long rowBytes = Math.max(1, batchBytes / batch.size());
+                    statementRows = (int) Math.max(1, Math.min(statementRows, MAX_STATEMENT_BYTES / rowBytes));
+                    for (int from = 0; from < batch.size(); from += statementRows) {
+                        List<Object[]> rows = batch.subList(from, Math.min(batch.size(), from + statementRows));
+                        // Prepared again only when the number of rows changes
+                        if (ps == null || psRows != rows.size()) {
+                            if (ps != null) {
+                                ps.close();
+                            }
+                            ps = writerConn.prepareStatement(
+                                    insertSql + (placeholders + ",").repeat(rows.size() - 1) + placeholders);
+                            psRows = rows.size();
+                        }
+                        int index = 1;
+                        for (Object[] row : rows) {
+                            for (int i = 0; i < row.length; i++) {
+                                bind(ps, index++, row[i], sqlTypes[i]);
+                            }
+                        }
+                        ps.executeUpdate();
+                    }
+                } else {
+                    if (ps == null) {
+                        ps = writerConn.prepareStatement(insertSql + placeholders);
+                    }
+                    for (Object[] row : batch) {
+                        for (int i = 0; i < row.length; i++) {
+                            bind(ps, i + 1, row[i], sqlTypes[i]);
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                writerConn.commit();
+                tableStatus.put("rows", copied.addAndGet(batch.size()));
+            }
+        } catch (Exception e) {
+            writerConn.rollback();
+            throw e;
+        } finally {
+            if (ps != null) {
+                ps.close();
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else {
+            ps.setObject(index, value);
+        }
+    }
+
+    /**
+     * Load a batch through the PostgreSQL CopyManager. The driver is only on the
+     * runtime class path, so it is called through reflection.
+     */
+    private static void copyIn(Connection writerConn, String sql, List<Object[]> batch) throws Exception {
+        ClassLoader loader = writerConn.getClass().getClassLoader();
+        Class<?> baseConnection = Class.forName("org.postgresql.core.BaseConnection", true, loader);
+        Class<?> copyManagerClass = Class.forName("org.postgresql.copy.CopyManager", true, loader);
+        Object copyManager = copyManagerClass.getConstructor(baseConnection)
+                .newInstance(writerConn.unwrap(baseConnection));
+        Method copyIn = copyManagerClass.getMethod("copyIn", String.class, java.io.Reader.class);
+        StringBuilder csv = new StringBuilder();
+        for (Object[] row : batch) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                Object value = row[i];
+                if (value == null) {
+                    continue;
+                }
+                String text;
+                if (value instanceof byte[]) {
+                    text = "\\x" + java.util.HexFormat.of().formatHex((byte[]) value);
+                } else {
+                    text = value.toString();
+                }
+                csv.append('"').append(text.replace("\"", "\"\"")).append('"');
+            }
+            csv.append('\n');
+        }
+        copyIn.invoke(copyManager, sql, new StringReader(csv.toString()));
+    }
+
+    /**
+     * Create the target table from the columns of the source. The length of a
+     * column is only kept when the source reports one the target accepts: text
+     * or an unbounded varchar are created without, or as max on SQL Server.
+     */
+    private void createTargetTable(String table, ResultSetMetaData metaData, Connection writerConn)
+            throws Exception {
+        DatabaseFamily family = DatabaseFamily.of(writerConn);
+        StringBuilder ddl = new StringBuilder("CREATE TABLE " + table + " (");
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (i > 1) {
+                ddl.append(", ");
+            }
+            String typeName = metaData.getColumnTypeName(i);
+            ddl.append(quote(metaData.getColumnName(i))).append(' ');
+            if (typeMapping != null && typeMapping.containsKey(typeName)) {
+                ddl.append(typeMapping.getString(typeName));
+            } else {
+                ddl.append(typeName);
+                int type = metaData.getColumnType(i);
+                int precision = metaData.getPrecision(i);
+                switch (type) {
+                    case java.sql.Types.CHAR, java.sql.Types.VARCHAR, java.sql.Types.NCHAR,
+                            java.sql.Types.NVARCHAR, java.sql.Types.BINARY, java.sql.Types.VARBINARY -> {
+                        if (precision > 0 && precision <= maxLength(family, type)) {
+                            ddl.append('(').append(precision).append(')');
+                        } else if (family == DatabaseFamily.SQLSERVER && precision > 0
+                                && type != java.sql.Types.CHAR && type != java.sql.Types.NCHAR
+                                && type != java.sql.Types.BINARY) {
+                            ddl.append("(max)");
+                        }
+                    }
+                    case java.sql.Types.DECIMAL, java.sql.Types.NUMERIC -> {
+                        if (precision > 0 && precision <= maxPrecision(family)) {
+                            ddl.append('(').append(precision).append(',')
+                                    .append(metaData.getScale(i)).append(')');
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            if (metaData.isNullable(i) == ResultSetMetaData.columnNoNulls) {
+                ddl.append(" NOT NULL");
+            }
+        }
+        ddl.append(")");
+        try (Statement stmt = writerConn.createStatement()) {
+            stmt.execute(ddl.toString());
+        }
+        writerConn.commit();
+    }
+
+    /**
+     * The largest length of a character or binary column of a database, the
+     * drivers report Integer.MAX_VALUE for a column without a length.
+     */
+    private static int maxLength(DatabaseFamily family, int type) {
+        boolean fixed = type == java.sql.Types.CHAR || type == java.sql.Types.NCHAR
+                || type == java.sql.Types.BINARY;
+        boolean national = type == java.sql.Types.NCHAR || type == java.sql.Types.NVARCHAR;
+        return switch (family) {
+            // VARCHAR in characters of utf8mb4 within the 65535 bytes of a row
+            case MYSQL, MARIADB -> fixed ? 255 : type == java.sql.Types.VARBINARY ? 65535 : 16383;
+            case POSTGRESQL -> 10485760;
+            case ORACLE -> fixed || type == java.sql.Types.VARBINARY ? 2000 : 4000;
+            case SQLSERVER -> national ? 4000 : 8000;
+            default -> Integer.MAX_VALUE - 1;
+        };
+    }
+
+    /**
+     * The largest precision of a decimal column of a database, an unbounded
+     * numeric is reported with a precision of 0 or above it.
+     */
+    private static int maxPrecision(DatabaseFamily family) {
+        return switch (family) {
+            case MYSQL, MARIADB -> 65;
+            case POSTGRESQL -> 1000;
+            case ORACLE, SQLSERVER -> 38;
+            default -> Integer.MAX_VALUE - 1;
+        };
+    }
+
+    private String columnList(List<String> columns) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(quote(columns.get(i)));
+        }
+        return sb.toString();
+    }
+
+    private String quote(String name) {
+        return identifierQuoteSymbol + name + identifierQuoteSymbol;
+    }
+}
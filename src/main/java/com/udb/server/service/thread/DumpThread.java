@@ -1,31 +1,41 @@
 package com.udb.server.service.thread;
 
-import java.io.FileOutputStream;
-import java.io.FileWriter;
-import java.nio.charset.Charset;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.alibaba.excel.EasyExcel;
-import com.alibaba.excel.ExcelWriter;
-import com.alibaba.excel.converters.Converter;
-import com.alibaba.excel.metadata.GlobalConfiguration;
-import com.alibaba.excel.metadata.data.WriteCellData;
-import com.alibaba.excel.metadata.property.ExcelContentProperty;
-import com.alibaba.excel.write.metadata.WriteSheet;
-import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.udb.model.BinaryRowSink;
+import com.udb.model.CsvRowSink;
+import com.udb.model.ExportEngine;
+import com.udb.model.JsonRowSink;
+import com.udb.model.RowSink;
+import com.udb.model.SqlRowSink;
+import com.udb.model.XlsxRowSink;
 import com.udb.server.service.BaseService;
 import com.udb.server.service.ComThread;
+import com.udb.server.service.WatermarkStore;
+import com.udb.server.service.jdbc.DatabaseFamily;
+import com.udb.server.service.jdbc.FetchStrategy;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.udb.server.service.jdbc.RowCountEstimator;
 import com.zaxxer.hikari.HikariDataSource;
 
 /**
  * This class extends the Thread class and is used to execute database uniform
  * statements in a separate thread.
+ * fileType may list several formats separated by commas, every table is then
+ * read once and written to all of them.
+ * With a watermarkColumn, a column name or a JSON object of the column of
+ * every table, the dump is incremental: the rows from the mark of the previous
+ * dump up to, not including, the greatest value of the column when the dump
+ * starts are written, and that value becomes the new mark once all the files
+ * are written. The first dump of a table writes all of it but the rows at the
+ * greatest value. An incremental dump is data only, so that replaying it does
+ * not drop the table, and a dumpType with the structure is rejected.
  */
 public class DumpThread extends ComThread {
     // database
@@ -34,42 +44,87 @@ public class DumpThread extends ComThread {
     private String dropTableSql;
     private String ddlSql;
     private String pageSql;
-    private String fieldTypes;
     private String identifierQuoteSymbol;
     // common
     private String path;
     private String tables;
-    private String fileType;
+    private List<String> fileTypes = new ArrayList<>();
     private String fileName;
-    // sql
+    // sql,binary
     private String dumpType;
+    // sinks
+    private List<RowSink> sinks = new ArrayList<>();
+    private SqlRowSink sqlSink;
+    private BinaryRowSink binarySink;
+    // progress
+    private boolean exactCount;
+    private Map<String, Long> rowCounts = new HashMap<>();
+    private long totalRows;
+    private long dumpedRows;
+    // incremental
+    private String watermarkColumn;
+    private JSONObject watermarkColumns;
+    private Map<String, Watermark> watermarks = new HashMap<>();
+
+    /**
+     * The rows of a table to dump: from low, when there is a previous mark, up to
+     * high, the greatest value when the dump started. The rows at high are left
+     * to the next dump, with the rows committed later with the same value.
+     */
+    private static class Watermark {
+        private final String column;
+        private final Object low;
+        private final Object high;
+
+        private Watermark(String column, Object low, Object high) {
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        private int bind(java.sql.PreparedStatement ps) throws SQLException {
+            int index = 1;
+            if (low != null) {
+                ps.setObject(index++, low);
+            }
+            ps.setObject(index++, high);
+            return index;
+        }
+    }
 
     public DumpThread(String sessionId, Map<String, Object> body) {
         System.out.println("DumpThread created");
         System.out.println("sessionId: " + sessionId);
         this.sessionId = sessionId;
         // database
-        this.datasourceJson = JSONObject.parseObject(body.get("datasource").toString());
+        this.datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
         // database uniform
         this.dropTableSql = body.get("dropTableSql").toString();
         this.ddlSql = body.get("ddlSql").toString();
         this.pageSql = body.get("pageSql").toString();
-        this.fieldTypes = body.get("fieldTypes").toString();
         this.identifierQuoteSymbol = body.get("identifierQuoteSymbol").toString();
         // common
         this.path = body.get("path").toString();
-        this.fileType = body.get("fileType").toString();
+        for (String fileType : body.get("fileType").toString().split(",")) {
+            this.fileTypes.add(fileType.trim());
+        }
         this.fileName = body.get("fileName").toString();
         this.tables = body.get("tables").toString();
-        // sql
-        if (this.fileType.equals("sql")) {
-            this.dumpType = body.get("dumpType").toString();
-        } else if (this.fileType.equals("xlsx")) {
-
-        } else if (this.fileType.equals("csv")) {
-
-        } else if (this.fileType.equals("json")) {
-
+        this.exactCount = body.containsKey("exactCount") && body.get("exactCount").toString().equals("true");
+        if (body.containsKey("watermarkColumn")) {
+            String column = body.get("watermarkColumn").toString().trim();
+            if (column.startsWith("{")) {
+                this.watermarkColumns = JSONObject.parseObject(column);
+            } else if (!column.isEmpty()) {
+                this.watermarkColumn = column;
+            }
+        }
+        // sql,binary carry the structure as well as the data, but an
+        // incremental dump only carries rows: replaying it must not drop the table
+        if (this.fileTypes.contains("sql") || this.fileTypes.contains("binary")) {
+            boolean incremental = watermarkColumn != null || watermarkColumns != null;
+            this.dumpType = body.containsKey("dumpType") ? body.get("dumpType").toString()
+                    : incremental ? "d" : "sd";
         }
 
     }
@@ -83,9 +138,12 @@ public class DumpThread extends ComThread {
     }
 
     @Override
-    public void run() {
-        FileWriter fileWriter = null;
-        ExcelWriter excelWriter = null;
+    public String getDatasourceKey() {
+        return BaseService.getDataSourceKey(datasourceJson);
+    }
+
+    @Override
+    protected void execute() {
         try {
             startTime = new java.util.Date();
             System.out.println("Start executing");
@@ -101,56 +159,57 @@ public class DumpThread extends ComThread {
 
             }
             System.out.println("datasource exists");
+            if ((watermarkColumn != null || watermarkColumns != null) && dumpType != null
+                    && dumpType.contains("s")) {
+                message = "An incremental dump is data only, dumpType must be d";
+                endTime = new java.util.Date();
+                status = 500;
+                return;
+            }
             this.conn = dataSource.getConnection();
+            FetchStrategy.prepareConnection(conn);
             if (results == null) {
                 results = new java.util.concurrent.ArrayBlockingQueue<>(100);
             }
-            // excel,sql可以多个表在同一个文件
-            // csv,json只能处理一个表
+            JSONArray tablesArray = JSONArray.parseArray(this.tables);
             // file
-            if (this.fileType.equals("sql")) {
-                fileWriter = new FileWriter(this.path + "/" + this.fileName + ".sql", Charset.forName("UTF-8"));
-            } else if (this.fileType.equals("xlsx")) {
-                FileOutputStream out = new FileOutputStream(this.path + "/" + this.fileName + ".xlsx");
-                excelWriter = EasyExcel.write(out)
-                .registerConverter(new DateConverter())
-                .registerConverter(new TimestampConverter())
-                .registerConverter(new TimeConverter())
-                
-                .build();
+            for (String fileType : fileTypes) {
+                sinks.add(createSink(fileType, tablesArray.size() > 1));
             }
-            JSONArray tablesArray = JSONArray.parseArray(this.tables);
+            // Plan the dump from the row counts, estimated from the statistics by default
             for (int i = 0; i < tablesArray.size(); i++) {
                 String table = tablesArray.getString(i);
-                progress = Math.round(i * 10000 / tablesArray.size()) * 100.0;
-                message = "Dump table:" + table;
-                dumpTable(table, fileWriter, excelWriter);
+                Watermark mark = planWatermark(table);
+                long count = mark != null && mark.low != null ? countWatermark(table, mark)
+                        : RowCountEstimator.count(conn, table, exactCount);
+                rowCounts.put(table, count);
+                totalRows += count;
             }
-            if (fileWriter != null) {
-                fileWriter.close();
-            }
-            if (excelWriter != null) {
-                excelWriter.finish();
-                excelWriter.close();
+            detail.put("totalRows", totalRows);
+            for (int i = 0; i < tablesArray.size(); i++) {
+                String table = tablesArray.getString(i);
+                if (totalRows <= 0) {
+                    progress = Math.round(i * 10000.0 / tablesArray.size()) / 100.0;
+                }
+                message = "Dump table:" + table;
+                dumpTable(table);
             }
+            RowSink.closeAll(sinks);
+            // The files are complete, the next dump starts after them
+            storeWatermarks();
 
             endTime = new java.util.Date();
             System.out.println("Execute success");
 
             message = "Execute success";
+            progress = 100;
             status = 200;
             endTime = new java.util.Date();
         } catch (Exception e) {
-            if (fileWriter != null) {
-                try {
-                    fileWriter.close();
-                } catch (Exception e1) {
-                    e1.printStackTrace();
-                }
-            }
-            if (excelWriter != null) {
-                excelWriter.finish();
-                excelWriter.close();
+            try {
+                RowSink.closeAll(sinks);
+            } catch (Exception e1) {
+                e1.printStackTrace();
             }
             try {
                 if (conn != null) {
@@ -166,302 +225,262 @@ public class DumpThread extends ComThread {
         }
     }
 
-    private void dumpTable(String table, FileWriter fileWriter, ExcelWriter excelWriter) throws Exception {
-        if (this.fileType.equals("sql")) {
-            fileWriter.write("--- Dump Table:" + table + "---\n");
-            try {
-                if (this.dumpType.equals("sd")) {
-                    dumpTableStructure(table, fileWriter);
-                    dumpTableData(table, fileWriter, null, null);
-                } else if (this.dumpType.equals("s")) {
-                    dumpTableStructure(table, fileWriter);
-                } else if (this.dumpType.equals("d")) {
-                    dumpTableData(table, fileWriter, null, null);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                fileWriter.write("--- Error:" + table + "---\n");
-                if (e.getMessage() != null) {
-                    fileWriter.write("---" + e.getMessage().replace("\n", " ") + "---\n");
-                }
-            }
-        } else if (this.fileType.equals("xlsx")) {
-            WriteSheet writeSheet = EasyExcel.writerSheet(table).build();
-            dumpTableData(table, fileWriter, excelWriter, writeSheet);
+    /**
+     * excel,sql,binary可以多个表在同一个文件
+     * csv,json,ndjson每个表一个文件
+     */
+    private RowSink createSink(String fileType, boolean multiTable) throws Exception {
+        String base = this.path + "/" + this.fileName;
+        switch (fileType) {
+            case "sql":
+                sqlSink = new SqlRowSink(base + ".sql", this.identifierQuoteSymbol, DatabaseFamily.of(conn));
+                return sqlSink;
+            case "binary":
+                binarySink = new BinaryRowSink(base + ".udbb");
+                return binarySink;
+            case "xlsx":
+                return new XlsxRowSink(base + ".xlsx");
+            case "csv":
+                return new CsvRowSink(table -> base + (multiTable ? "_" + table : "") + ".csv");
+            case "json":
+            case "ndjson":
+                // json is one array, ndjson is one object per line
+                return new JsonRowSink(table -> base + (multiTable ? "_" + table : "") + "." + fileType,
+                        fileType.equals("ndjson"));
+            default:
+                return ExportEngine.createSink(fileType, this.path, this.fileName);
+        }
+    }
 
-        } else if (this.fileType.equals("csv")) {
-            FileWriter csvWriter = null;
-            try {
-                JSONArray tablesArray = JSONArray.parseArray(this.tables);
-                String p = this.path + "/" + this.fileName + ".csv";
-                if (tablesArray.size() > 1) {
-                    p = this.path + "/" + this.fileName + "_" + table + ".csv";
-                }
-                csvWriter = new FileWriter(p,
-                        Charset.forName("UTF-8"));
-                dumpTableData(table, csvWriter, excelWriter, null);
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                if (csvWriter != null) {
-                    csvWriter.flush();
-                    csvWriter.close();
-                }
+    private void dumpTable(String table) throws Exception {
+        if (sqlSink != null) {
+            sqlSink.writeRaw("--- Dump Table:" + table + "---\n");
+        }
+        boolean structure = this.dumpType != null && this.dumpType.contains("s");
+        boolean data = this.dumpType == null || this.dumpType.contains("d");
+        // The structure only dump type leaves out the data of sql and binary
+        List<RowSink> dataSinks = new ArrayList<>();
+        for (RowSink sink : sinks) {
+            if (data || (sink != sqlSink && sink != binarySink)) {
+                dataSinks.add(sink);
             }
-
-        } else if (this.fileType.equals("json")) {
-            FileWriter jsonWriter = null;
-            try {
-                JSONArray tablesArray = JSONArray.parseArray(this.tables);
-                String p = this.path + "/" + this.fileName + ".json";
-                if (tablesArray.size() > 1) {
-                    p = this.path + "/" + this.fileName + "_" + table + ".json";
-                }
-                jsonWriter = new FileWriter(p,
-                        Charset.forName("UTF-8"));
-                jsonWriter.write("[");
-                dumpTableData(table, jsonWriter, excelWriter, null);
-                jsonWriter.write("]");
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                if (jsonWriter != null) {
-                    jsonWriter.flush();
-                    jsonWriter.close();
+        }
+        try {
+            if (structure) {
+                dumpTableStructure(table);
+            }
+            if (binarySink != null && !data) {
+                // The table header still describes the columns
+                java.sql.Statement stmt = conn.createStatement();
+                java.sql.ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE 1=0");
+                binarySink.startTable(table, rs.getMetaData());
+                binarySink.endTable();
+                rs.close();
+                stmt.close();
+            }
+            if (!dataSinks.isEmpty()) {
+                dumpTableData(table, dataSinks);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            // The rows of the table are not all written, the next dump reads them again
+            watermarks.remove(table);
+            // A failed read ends the streaming transaction, the next table needs a new one
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+            }
+            // Leave the other files readable
+            for (RowSink sink : dataSinks) {
+                try {
+                    sink.endTable();
+                } catch (Exception e1) {
+                    e1.printStackTrace();
                 }
             }
-
+            if (sqlSink == null) {
+                throw e;
+            }
+            sqlSink.writeRaw("--- Error:" + table + "---\n");
+            if (e.getMessage() != null) {
+                sqlSink.writeRaw("---" + e.getMessage().replace("\n", " ") + "---\n");
+            }
         }
     }
 
-    private void dumpTableStructure(String table, FileWriter fileWriter) throws Exception {
-        fileWriter.write("--- Dump Table Structure:" + table + "---\n");
-        fileWriter.write(this.dropTableSql.replace("{table}", table) + ";\n");
-        // select ddl
-        String sql = this.ddlSql.replace("{table}", table);
-        java.sql.Statement stmt = conn.createStatement();
-        java.sql.ResultSet rs = stmt.executeQuery(sql);
-        if (rs.next()) {
-            fileWriter.write(rs.getString(2) + ";\n");
+    private void dumpTableStructure(String table) throws Exception {
+        String dropSql = this.dropTableSql.replace("{table}", table);
+        String ddl = selectTableDdl(table);
+        if (sqlSink != null) {
+            sqlSink.writeRaw("--- Dump Table Structure:" + table + "---\n");
+            sqlSink.writeRaw(dropSql + ";\n");
+            if (!ddl.isEmpty()) {
+                sqlSink.writeRaw(ddl + ";\n");
+            }
+        }
+        if (binarySink != null) {
+            binarySink.setTableStructure(dropSql, ddl);
         }
-        rs.close();
-        stmt.close();
     }
 
-    private void dumpTableData(String table, FileWriter fileWriter, ExcelWriter excelWriter, WriteSheet writeSheet)
-            throws Exception {
-        if (this.fileType.equals("sql")) {
-            fileWriter.write("--- Dump Table Data:" + table + "---\n");
-        }
-        // 查询数据个数
-        String sql = "SELECT COUNT(*) FROM  " + table;
-        java.sql.Statement stmt = conn.createStatement();
-        java.sql.ResultSet rs = stmt.executeQuery(sql);
-        if (rs.next()) {
-            long count = rs.getLong(1);
-            if (this.fileType.equals("sql")) {
-                fileWriter.write("--- Total:" + count + "---\n");
+    private String selectTableDdl(String table) throws Exception {
+        // select ddl, once per table until the schema changes
+        return MetadataCache.getDdl(getDatasourceKey(), table, () -> {
+            String sql = this.ddlSql.replace("{table}", table);
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet rs = stmt.executeQuery(sql);
+            String ddl = "";
+            if (rs.next() && rs.getString(2) != null) {
+                ddl = rs.getString(2);
             }
             rs.close();
             stmt.close();
-            //
-            long pageSize = 1000;
-            if (count <= pageSize) {
-                dumpTableDataPage(table, fileWriter, excelWriter, writeSheet, 0, count);
-            } else {
-                long pageCount = count / pageSize;
-                for (int i = 0; i < pageCount; i++) {
-                    dumpTableDataPage(table, fileWriter, excelWriter, writeSheet, i * pageSize, pageSize);
-                }
-            }
-        }
+            return ddl;
+        });
     }
 
-    private void dumpTableDataPage(String table, FileWriter fileWriter, ExcelWriter excelWriter,
-            WriteSheet writeSheet,
-            long start,
-            long length) throws Exception {
-
-        if (this.fileType.equals("sql")) {
-            fileWriter.write("--- Page:" + start + "," + length + "---\n");
-        }
-        // 查询数据
-        String sql = "SELECT * FROM  " + table + " "
-                + this.pageSql.replace("{1}", start + "").replace("{2}", length + "");
-        java.sql.Statement stmt = conn.createStatement();
-        java.sql.ResultSet rs = stmt.executeQuery(sql);
-        JSONArray supportFieldTypes = JSONArray.parseArray(this.fieldTypes);
-        List<List<Object>> rows = null;
-        if (this.fileType.equals("xlsx")) {
-            rows = new ArrayList<>();
+    private void dumpTableData(String table, List<RowSink> dataSinks) throws Exception {
+        boolean sql = dataSinks.contains(sqlSink);
+        if (sql) {
+            sqlSink.writeRaw("--- Dump Table Data:" + table + "---\n");
         }
-        new ArrayList<>();
-        long index = start;
-        while (rs.next()) {
-            if (this.fileType.equals("sql")) {
-                dumpTableDataPageSql(table, rs, fileWriter, supportFieldTypes);
-            } else if (this.fileType.equals("xlsx")) {
-                rows.add(dumpTableDataPageExcel(table, rs, excelWriter, writeSheet, supportFieldTypes, index));
-            } else if (this.fileType.equals("csv")) {
-                dumpTableDataPageCsv(table, rs, fileWriter, supportFieldTypes, index);
-            } else if (this.fileType.equals("json")) {
-                dumpTableDataPageJSON(table, rs, fileWriter, supportFieldTypes, index);
+        // The count only plans the pages and the progress, the last page is the
+        // first one that comes back short
+        long count = rowCounts.containsKey(table) ? rowCounts.get(table)
+                : RowCountEstimator.count(conn, table, exactCount);
+        if (sql) {
+            sqlSink.writeRaw("--- Total:" + count + "---\n");
+            Watermark mark = watermarks.get(table);
+            if (mark != null) {
+                sqlSink.writeRaw("--- Watermark:" + mark.column + (mark.low == null ? "" : ">=" + mark.low) + "<"
+                        + mark.high + "---\n");
             }
-            index++;
         }
-        if (excelWriter != null) {
-            excelWriter.write(rows, writeSheet);
-        }
-        if (fileWriter != null) {
-            fileWriter.flush();
-        }
-        rs.close();
-        stmt.close();
-    }
-
-    private void dumpTableDataPageSql(String table, java.sql.ResultSet rs, FileWriter fileWriter,
-            JSONArray supportFieldTypes)
-            throws Exception {
-        // insert into
-        fileWriter.write("INSERT INTO `" + table + "` (");
-        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-            fileWriter.write(this.identifierQuoteSymbol + rs.getMetaData().getColumnName(i)
-                    + this.identifierQuoteSymbol);
-            if (i < rs.getMetaData().getColumnCount()) {
-                fileWriter.write(",");
+        // One read of every page for all the formats
+        ExportEngine engine = new ExportEngine(dataSinks);
+        engine.setBatchListener(() -> {
+            try {
+                checkLimits(dumpedRows + engine.getRows(), engine.getBytes());
+            } catch (SQLException e) {
+                throw new RuntimeException(e.getMessage(), e);
             }
-        }
-        fileWriter.write(") VALUES (");
-        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-            String typeName = rs.getMetaData().getColumnTypeName(i);
-            if (rs.getString(i) == null) {
-                fileWriter.write("NULL");
+        });
+        long pageSize = 1000;
+        long start = 0;
+        // The rows between the marks are read by one streamed query: the
+        // watermark is not unique, pages ordered by it could overlap
+        Watermark mark = watermarks.get(table);
+        while (true) {
+            if (sql && mark == null) {
+                sqlSink.writeRaw("--- Page:" + start + "," + pageSize + "---\n");
+            }
+            // 查询数据
+            String pageQuery = mark != null ? "SELECT * FROM  " + table + " " + watermarkCondition(mark)
+                    : "SELECT * FROM  " + table + " "
+                            + this.pageSql.replace("{1}", start + "").replace("{2}", pageSize + "");
+            java.sql.Statement stmt;
+            java.sql.ResultSet rs;
+            if (mark != null) {
+                java.sql.PreparedStatement ps = conn.prepareStatement(pageQuery, java.sql.ResultSet.TYPE_FORWARD_ONLY,
+                        java.sql.ResultSet.CONCUR_READ_ONLY);
+                FetchStrategy.apply(conn, ps, (int) pageSize);
+                watch(ps);
+                mark.bind(ps);
+                stmt = ps;
+                rs = ps.executeQuery();
             } else {
-                String catalog = "String";
-                for (int j = 0; j < supportFieldTypes.size(); j++) {
-                    JSONObject fieldType = supportFieldTypes.getJSONObject(j);
-                    if (fieldType.getString("name").equals(typeName)) {
-                        catalog = fieldType.getString("catalog");
-                        break;
-                    }
-                }
-                if ("Integer Fixed-Point Floating-Point  Binary  Bit-Value Enumeration".indexOf(catalog) >= 0) {
-                    fileWriter.write(rs.getString(i));
-                } else {
-                    fileWriter.write("'" + rs.getString(i).replace("'", "''") + "'");
-                }
+                stmt = FetchStrategy.createStatement(conn, (int) pageSize);
+                watch(stmt);
+                rs = stmt.executeQuery(pageQuery);
+            }
+            if (start == 0) {
+                engine.startTable(table, rs.getMetaData());
+            }
+            long rows = engine.scan(rs);
+            rs.close();
+            stmt.close();
+            dumpedRows += rows;
+            if (totalRows > 0) {
+                progress = Math.min(99.99, Math.round(dumpedRows * 10000.0 / totalRows) / 100.0);
             }
-            if (i < rs.getMetaData().getColumnCount()) {
-                fileWriter.write(",");
+            detail.put("dumpedRows", dumpedRows);
+            if (mark != null || rows < pageSize) {
+                break;
             }
+            start += pageSize;
         }
-        fileWriter.write(");\n");
+        engine.endTable();
     }
 
-    private List<Object> dumpTableDataPageExcel(String table, java.sql.ResultSet rs, ExcelWriter excelWriter,
-            WriteSheet writeSheet,
-            JSONArray supportFieldTypes, long start)
-            throws Exception {
-        // insert into
-        if (start == 0) {
-            // 插入表头
-            List<List<String>> headList = new ArrayList<List<String>>();
-            List<String> head = new ArrayList<String>();
-            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-              head.add(rs.getMetaData().getColumnName(i));
-            }
-            headList.add(head);
-            excelWriter.write(headList, writeSheet);
-        }
-        // 插入数据
-        List<Object> data = new ArrayList<>();
-        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-            data.add(rs.getObject(i));
+    private String watermarkColumnOf(String table) {
+        if (watermarkColumns != null) {
+            return watermarkColumns.getString(table);
         }
-        return data;
+        return watermarkColumn;
     }
 
-    private void dumpTableDataPageCsv(String table, java.sql.ResultSet rs, FileWriter fileWriter,
-            JSONArray supportFieldTypes, long start)
-            throws Exception {
-        // 插入表头
-        if (start == 0) {
-
-            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-                fileWriter.write(rs.getMetaData().getColumnName(i));
-                if (i < rs.getMetaData().getColumnCount()) {
-                    fileWriter.write(",");
-                }
-            }
-            fileWriter.write("\n");
+    /**
+     * Read the mark of the previous dump of a table and the greatest value of
+     * its watermark column now.
+     */
+    private Watermark planWatermark(String table) throws Exception {
+        String column = watermarkColumnOf(table);
+        if (column == null) {
+            return null;
         }
-        // 插入数据
-        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-            fileWriter.write(rs.getObject(i).toString());
-            if (i < rs.getMetaData().getColumnCount()) {
-                fileWriter.write(",");
-            }
+        String quoted = identifierQuoteSymbol + column + identifierQuoteSymbol;
+        Object high = null;
+        java.sql.Statement stmt = conn.createStatement();
+        java.sql.ResultSet rs = stmt.executeQuery("SELECT MAX(" + quoted + ") FROM " + table);
+        if (rs.next()) {
+            high = rs.getObject(1);
         }
-        fileWriter.write("\n");
-    }
-
-    private void dumpTableDataPageJSON(String table, java.sql.ResultSet rs, FileWriter fileWriter,
-            JSONArray supportFieldTypes, long start)
-            throws Exception {
-        Map<String, Object> data = new HashMap<>();
-        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-            data.put(rs.getMetaData().getColumnName(i), rs.getObject(i));
+        rs.close();
+        stmt.close();
+        if (high == null) {
+            // Nothing to mark, the table is dumped whole
+            return null;
         }
-        fileWriter.write(JSON.toJSONString(data));
-        fileWriter.write(",\n");
+        Watermark mark = new Watermark(column, WatermarkStore.get(getDatasourceKey(), table, column), high);
+        watermarks.put(table, mark);
+        System.out.println("Watermark " + table + "." + column + ": " + mark.low + " -> " + high);
+        return mark;
     }
 
-}
-
-class DateConverter implements Converter<java.sql.Date> {
-    @Override
-    public Class<java.sql.Date> supportJavaTypeKey() {
-        return java.sql.Date.class;
+    private long countWatermark(String table, Watermark mark) throws Exception {
+        java.sql.PreparedStatement ps = conn
+                .prepareStatement("SELECT COUNT(*) FROM " + table + " " + watermarkCondition(mark));
+        mark.bind(ps);
+        java.sql.ResultSet rs = ps.executeQuery();
+        long count = rs.next() ? rs.getLong(1) : 0;
+        rs.close();
+        ps.close();
+        return count;
     }
 
-    @Override
-    public WriteCellData<?> convertToExcelData(java.sql.Date value, ExcelContentProperty property,
-            GlobalConfiguration config) {
-        // SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        if (value == null) {
-            return new WriteCellData<>("");
+    /**
+     * The rows between the marks, high excluded. The first dump also takes the
+     * rows without a value.
+     */
+    private String watermarkCondition(Watermark mark) {
+        if (mark == null) {
+            return "";
         }
-        return new WriteCellData<>(value.toString());
-    }
-}
-class TimestampConverter implements Converter<java.sql.Timestamp> {
-    @Override
-    public Class<java.sql.Timestamp> supportJavaTypeKey() {
-        return java.sql.Timestamp.class;
-    }
-    @Override
-    public WriteCellData<?> convertToExcelData(java.sql.Timestamp value, ExcelContentProperty property,
-            GlobalConfiguration config) {
-        // SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        if (value == null) {
-            return new WriteCellData<>("");
+        String quoted = identifierQuoteSymbol + mark.column + identifierQuoteSymbol;
+        if (mark.low == null) {
+            return "WHERE (" + quoted + " < ? OR " + quoted + " IS NULL)";
         }
-        return new WriteCellData<>(value.toString());
+        return "WHERE " + quoted + " >= ? AND " + quoted + " < ?";
     }
-}
-class TimeConverter implements Converter<java.sql.Time> {
-    @Override
-    public Class<java.sql.Time> supportJavaTypeKey() {
-        return java.sql.Time.class;
-    }
-    @Override
-    public WriteCellData<?> convertToExcelData(java.sql.Time value, ExcelContentProperty property,
-            GlobalConfiguration config) {
-        // SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        if (value == null) {
-            return new WriteCellData<>("");
+
+    private void storeWatermarks() throws Exception {
+        Map<String, Object> stored = new HashMap<>();
+        for (Map.Entry<String, Watermark> entry : watermarks.entrySet()) {
+            WatermarkStore.put(getDatasourceKey(), entry.getKey(), entry.getValue().column, entry.getValue().high);
+            stored.put(entry.getKey(), entry.getValue().high.toString());
+        }
+        if (!stored.isEmpty()) {
+            detail.put("watermarks", stored);
         }
-        return new WriteCellData<>(value.toString());
     }
-}
\ No newline at end of file
+
+}
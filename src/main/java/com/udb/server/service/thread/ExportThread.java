@@ -0,0 +1,193 @@
+package com.udb.server.service.thread;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.model.ExportEngine;
+import com.udb.model.RowSink;
+import com.udb.server.service.BaseService;
+import com.udb.server.service.ComThread;
+import com.udb.server.service.jdbc.FetchStrategy;
+import com.udb.server.service.jdbc.RowCountEstimator;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * This class extends the Thread class and is used to export tables of
+ * databases to files in a separate thread, through ExportEngine.
+ * The rows and bytes written are reported while the export runs, and the
+ * export stops at the next batch when the task is stopped.
+ */
+public class ExportThread extends ComThread {
+    // [{database:"",tables:[""]}]
+    private JSONArray argsJson;
+    private String path;
+    private List<String> formats = new ArrayList<>();
+
+    private long totalRows;
+    // Rows and bytes of the databases already exported
+    private long doneRows;
+    private long doneBytes;
+
+    public ExportThread(String sessionId, Map<String, Object> body) {
+        System.out.println("ExportThread created");
+        System.out.println("sessionId: " + sessionId);
+        this.sessionId = sessionId;
+        this.argsJson = JSONArray.parseArray(body.get("data").toString());
+        this.path = body.get("path").toString();
+        for (String format : body.get("format").toString().split(",")) {
+            this.formats.add(format.trim());
+        }
+    }
+
+    public String getType() {
+        return "export";
+    }
+
+    public String getLable() {
+        List<String> databases = new ArrayList<>();
+        for (int d = 0; d < argsJson.size(); d++) {
+            databases.add(argsJson.getJSONObject(d).getString("database"));
+        }
+        return String.join(",", databases);
+    }
+
+    @Override
+    public String getDatasourceKey() {
+        // The databases of an export are read one after the other, the first one
+        // stands for the task
+        return argsJson.isEmpty() ? "" : argsJson.getJSONObject(0).getString("database");
+    }
+
+    @Override
+    protected void execute() {
+        try {
+            startTime = new java.util.Date();
+            System.out.println("Start executing");
+            if (results == null) {
+                results = new java.util.concurrent.LinkedBlockingQueue<>();
+            }
+            // Plan the progress from the estimated row counts
+            message = "Count rows";
+            for (int d = 0; d < argsJson.size(); d++) {
+                HikariDataSource dataSource = BaseService.getDataSource(argsJson.getJSONObject(d).getString("database"));
+                if (dataSource == null) {
+                    continue;
+                }
+                try (Connection countConn = dataSource.getConnection()) {
+                    JSONArray tablesJson = argsJson.getJSONObject(d).getJSONArray("tables");
+                    for (int j = 0; j < tablesJson.size(); j++) {
+                        totalRows += Math.max(0, RowCountEstimator.count(countConn, tablesJson.getString(j), false));
+                    }
+                }
+            }
+            detail.put("totalRows", totalRows);
+            detail.put("rows", 0L);
+            detail.put("bytes", 0L);
+            for (int d = 0; d < argsJson.size(); d++) {
+                JSONObject databaseJson = argsJson.getJSONObject(d);
+                exportDatabase(databaseJson.getString("database"), databaseJson.getJSONArray("tables"));
+            }
+            progress = 100;
+            message = "Execute success";
+            status = 200;
+            endTime = new java.util.Date();
+            System.out.println("Execute success");
+        } catch (Exception e) {
+            e.printStackTrace();
+            message = isInterrupted() || e instanceof InterruptedException ? "Task has been terminated"
+                    : e.getMessage();
+            status = 500;
+            endTime = new java.util.Date();
+        }
+    }
+
+    private void exportDatabase(String databaseName, JSONArray tablesJson) throws Exception {
+        HikariDataSource dataSource = BaseService.getDataSource(databaseName);
+        if (dataSource == null) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("database", databaseName);
+            result.put("status", "fail");
+            result.put("message", "datasource does not exist");
+            results.put(result);
+            return;
+        }
+        List<RowSink> sinks = new ArrayList<>();
+        ExportEngine engine = new ExportEngine(sinks);
+        try {
+            for (String format : formats) {
+                sinks.add(ExportEngine.createSink(format, path, databaseName));
+            }
+            engine.setBatchListener(() -> {
+                report(engine);
+                try {
+                    checkLimits(doneRows + engine.getRows(), doneBytes + engine.getBytes());
+                } catch (SQLException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            });
+            for (int j = 0; j < tablesJson.size(); j++) {
+                String tableName = tablesJson.getString(j);
+                message = "Export table:" + databaseName + "." + tableName;
+                long start = System.currentTimeMillis();
+                long startRows = engine.getRows();
+                // Closing the connection from end() stops a blocked read
+                this.conn = dataSource.getConnection();
+                try {
+                    FetchStrategy.prepareConnection(conn);
+                    watch(FetchStrategy.createStatement(conn));
+                    try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + tableName)) {
+                        engine.startTable(tableName, rs.getMetaData());
+                        engine.scan(rs);
+                        engine.endTable();
+                    }
+                } finally {
+                    closeQuietly();
+                }
+                Map<String, Object> result = new HashMap<>();
+                result.put("database", databaseName);
+                result.put("table", tableName);
+                result.put("rows", engine.getRows() - startRows);
+                result.put("elapsed", System.currentTimeMillis() - start);
+                results.put(result);
+            }
+        } finally {
+            engine.close();
+            report(engine);
+            doneRows += engine.getRows();
+            doneBytes += engine.getBytes();
+        }
+    }
+
+    private void report(ExportEngine engine) {
+        long rows = doneRows + engine.getRows();
+        detail.put("rows", rows);
+        detail.put("bytes", doneBytes + engine.getBytes());
+        if (totalRows > 0) {
+            progress = Math.min(99.99, Math.round(rows * 10000.0 / totalRows) / 100.0);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (conn != null) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
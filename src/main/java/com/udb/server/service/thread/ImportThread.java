@@ -1,13 +1,38 @@
 package com.udb.server.service.thread;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import org.mozilla.universalchardet.UniversalDetector;
 
@@ -22,6 +47,8 @@ import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.udb.server.service.BaseService;
 import com.udb.server.service.ComThread;
+import com.udb.server.service.jdbc.AdaptiveBatcher;
+import com.udb.server.service.jdbc.TypedBinder;
 import com.zaxxer.hikari.HikariDataSource;
 
 /**
@@ -32,6 +59,11 @@ import com.zaxxer.hikari.HikariDataSource;
  * It also provides methods for managing the execution of SQL statements in a
  * transaction.
  * It uses HikariCP for connection pooling and FastJSON2 for JSON processing.
+ * The path is a file, a directory or a glob. The files of a directory or a
+ * glob go to the table of the first glob of tables that matches their name,
+ * or to table, with the mapping of their table in mappings, or mapping. They
+ * are loaded parallel files at a time, in the order of their names, or
+ * largest first with order size.
  */
 public class ImportThread extends ComThread {
 
@@ -41,16 +73,57 @@ public class ImportThread extends ComThread {
     private boolean isClear;
     private String table;
     private String clearTableSql;
-    private String identifierQuoteSymbol;
+    private String identifierQuoteSymbol = "";
+    // NDJSON files can be split by line and loaded over several connections,
+    // the files of a directory or a glob are loaded that many at a time
+    private int parallel = 1;
+    private AtomicLong importedRows = new AtomicLong();
+    private AtomicLong importedBytes = new AtomicLong();
+    // Failed files listed in the detail
+    private static final int MAX_ERRORS = 100;
+    // The table of every file name glob, and the mapping of every table. The
+    // tables are quoted with identifierQuoteSymbol, table is used as given.
+    private JSONObject tables;
+    private JSONObject mappings;
+    // name, or size to load the largest files first
+    private String order = "name";
+    // Commit the files together at the end instead of one by one
+    private boolean atomic;
 
     public ImportThread(String sessionId, Map<String, Object> body) {
         System.out.println("sessionId: " + sessionId);
         this.sessionId = sessionId;
-        this.datasourceJson = JSONObject.parseObject(body.get("datasource").toString());
+        this.datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
         this.path = body.get("path").toString();
-        this.mapping = body.get("mapping").toString();
+        if (body.containsKey("mapping")) {
+            this.mapping = body.get("mapping").toString();
+        }
         this.isClear = body.get("isClear").toString().equals("true");
-        this.table = body.get("table").toString();
+        if (body.containsKey("table")) {
+            this.table = body.get("table").toString();
+        }
+        if (body.containsKey("tables")) {
+            this.tables = JSONObject.parseObject(body.get("tables").toString());
+        }
+        if (body.containsKey("mappings")) {
+            this.mappings = JSONObject.parseObject(body.get("mappings").toString());
+        }
+        if (body.containsKey("order")) {
+            this.order = body.get("order").toString();
+        }
+        this.atomic = body.containsKey("atomic") && body.get("atomic").toString().equals("true");
+        if (body.containsKey("clearTableSql")) {
+            this.clearTableSql = body.get("clearTableSql").toString();
+        } else {
+            this.clearTableSql = "DELETE FROM " + this.table;
+        }
+        if (body.containsKey("identifierQuoteSymbol")) {
+            this.identifierQuoteSymbol = body.get("identifierQuoteSymbol").toString();
+        }
+        if (body.containsKey("parallel")) {
+            this.parallel = Math.max(1, Integer.parseInt(body.get("parallel").toString()));
+        }
+        this.parallel = Math.min(parallel, BaseService.getWorkerLimit(datasourceJson));
     }
 
     public String getType() {
@@ -62,7 +135,20 @@ public class ImportThread extends ComThread {
     }
 
     @Override
-    public void run() {
+    public String getDatasourceKey() {
+        return BaseService.getDataSourceKey(datasourceJson);
+    }
+
+    /**
+     * One connection per file or range loaded at once.
+     */
+    @Override
+    public Map<String, Integer> getWorkerConnections() {
+        return Map.of(getDatasourceKey(), parallel);
+    }
+
+    @Override
+    protected void execute() {
 
         try {
             startTime = new java.util.Date();
@@ -81,41 +167,36 @@ public class ImportThread extends ComThread {
             System.out.println("datasource exists");
             this.conn = dataSource.getConnection();
             if (results == null) {
-                results = new java.util.concurrent.ArrayBlockingQueue<>(100);
+                results = new java.util.concurrent.LinkedBlockingQueue<>();
             }
             this.conn.setAutoCommit(false);
             this.isTransaction = true;
-            // save sql
-            if (this.isClear) {
-                clearTable();
-            }
-            java.sql.Statement stmt = conn.createStatement();
-
-            List<String> sqls = null;
-            if (this.path.endsWith(".xlsx")) {
-                ImportXlsxListener listener = new ImportXlsxListener(stmt, this.mapping, this.table,
-                        this.identifierQuoteSymbol);
-                EasyExcel.read(this.path, listener).sheet().doRead();
-
-            } else if (this.path.endsWith(".csv")) {
-                importCsv(stmt, this.mapping, this.table, this.identifierQuoteSymbol);
-            } else if (this.path.endsWith(".json")) {
-                importJson(stmt, this.mapping, this.table, this.identifierQuoteSymbol);
-            } else {
+            if (isGlob(this.path) || new File(this.path).isDirectory()) {
+                importFiles();
+            } else if (!isSupported(this.path)) {
                 status = 500;
                 message = "File format is invalid";
                 endTime = new java.util.Date();
+                this.conn.rollback();
+                this.conn.close();
                 return;
-            }
-            if (sqls == null) {
-                status = 500;
-                message = "File Read Error";
-                endTime = new java.util.Date();
-                return;
+            } else {
+                File file = new File(this.path);
+                String fileTable = tableFor(file);
+                if (fileTable == null) {
+                    throw new Exception("table is required");
+                }
+                // save sql
+                if (this.isClear) {
+                    clearTable(conn, fileTable);
+                }
+                if (this.path.endsWith(".ndjson") || this.path.endsWith(".jsonl")) {
+                    importNdjson(file, mappingFor(fileTable), fileTable);
+                } else {
+                    importFile(conn, file, mappingFor(fileTable), fileTable);
+                }
             }
 
-            stmt.executeBatch();
-            stmt.close();
             this.conn.commit();
             this.conn.close();
             this.status = 200;
@@ -137,13 +218,298 @@ public class ImportThread extends ComThread {
         }
     }
 
-    private void clearTable() throws Exception {
-        String sql = this.clearTableSql;
+    /**
+     * Report the rows and estimated bytes executed by a batcher and its
+     * current batch size.
+     */
+    void imported(AdaptiveBatcher batcher, int rows) throws SQLException {
+        // A worker stopped because another one failed
+        if (Thread.currentThread().isInterrupted()) {
+            throw new SQLException("Import interrupted");
+        }
+        if (rows > 0) {
+            long total = importedRows.addAndGet(rows);
+            long bytes = importedBytes.addAndGet(batcher.getLastBytes());
+            detail.put("rows", total);
+            detail.put("bytes", bytes);
+            detail.put("batchSize", batcher.getBatchSize());
+            checkLimits(total, bytes);
+        }
+    }
+
+    /**
+     * Import the files of a directory or of a glob, parallel files at a time,
+     * each over its own connection. Every file is committed once loaded. With
+     * atomic the files are loaded one at a time over a single connection and
+     * committed together at the end, or all rolled back if one fails.
+     * The result of every file is queued, and the failed files are listed in
+     * the errors of the detail.
+     * The clear of the tables is committed before the load, except with atomic:
+     * the tables are then cleared in the transaction of the load.
+     */
+    private void importFiles() throws Exception {
+        message = "List files";
+        List<File> files = resolveFiles();
+        if (files.isEmpty()) {
+            throw new Exception("No file matches:" + this.path);
+        }
+        // The files of every table, the others are skipped
+        Map<String, List<File>> tableFiles = new LinkedHashMap<>();
+        Map<File, String> fileTables = new LinkedHashMap<>();
+        int fileCount = 0;
+        long totalBytes = 0;
+        for (File file : files) {
+            String fileTable = tableFor(file);
+            if (fileTable == null) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("file", file.getPath());
+                result.put("status", "skipped");
+                result.put("message", "No table matches the file");
+                results.put(result);
+                continue;
+            }
+            mappingFor(fileTable);
+            tableFiles.computeIfAbsent(fileTable, k -> new ArrayList<>()).add(file);
+            fileTables.put(file, fileTable);
+            fileCount++;
+            totalBytes += file.length();
+        }
+        // A worker loads a unit, one file or all the files of a table
+        boolean clearInWorker = this.isClear && atomic;
+        List<List<File>> units = new ArrayList<>();
+        List<String> unitTables = new ArrayList<>();
+        if (clearInWorker) {
+            for (Map.Entry<String, List<File>> entry : tableFiles.entrySet()) {
+                units.add(entry.getValue());
+                unitTables.add(entry.getKey());
+            }
+        } else {
+            for (Map.Entry<File, String> entry : fileTables.entrySet()) {
+                units.add(List.of(entry.getKey()));
+                unitTables.add(entry.getValue());
+            }
+        }
+        if (this.isClear && !clearInWorker) {
+            message = "Clear tables";
+            for (String fileTable : tableFiles.keySet()) {
+                clearTable(conn, fileTable);
+            }
+            // The workers load over their own connections, they would wait for
+            // the locks of an uncommitted DELETE
+            this.conn.commit();
+        }
+        List<Map<String, Object>> errors = new CopyOnWriteArrayList<>();
+        AtomicLong loadedBytes = new AtomicLong();
+        AtomicInteger loadedFiles = new AtomicInteger();
+        AtomicInteger failedFiles = new AtomicInteger();
+        detail.put("files", fileCount);
+        detail.put("loadedFiles", 0);
+        detail.put("failedFiles", 0);
+        detail.put("errors", errors);
+        message = "Import files";
+        // A commit over several connections is not atomic, atomic loads the
+        // units one after the other over a single connection
+        int workers = atomic ? 1 : Math.min(parallel, units.size());
+        BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(workers);
+        List<Connection> fileConns = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                Connection fileConn = BaseService.openConnection(datasourceJson);
+                fileConn.setAutoCommit(false);
+                fileConns.add(fileConn);
+                workerConns.add(fileConn);
+                connections.add(fileConn);
+            }
+            long total = Math.max(1, totalBytes);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int u = 0; u < units.size(); u++) {
+                List<File> unit = units.get(u);
+                String fileTable = unitTables.get(u);
+                futures.add(executor.submit(() -> {
+                    Connection fileConn = connections.take();
+                    try {
+                        if (clearInWorker) {
+                            clearTable(fileConn, fileTable);
+                        }
+                        for (File file : unit) {
+                            Map<String, Object> result = new HashMap<>();
+                            result.put("file", file.getPath());
+                            result.put("table", fileTable);
+                            long start = System.currentTimeMillis();
+                            try {
+                                result.put("rows",
+                                        importFile(fileConn, file, mappingFor(fileTable), sqlTable(fileTable)));
+                                if (!atomic) {
+                                    fileConn.commit();
+                                }
+                                result.put("status", "success");
+                                detail.put("loadedFiles", loadedFiles.incrementAndGet());
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                if (!atomic) {
+                                    fileConn.rollback();
+                                }
+                                result.put("status", "fail");
+                                result.put("message", e.getMessage());
+                                if (errors.size() < MAX_ERRORS) {
+                                    Map<String, Object> error = new HashMap<>();
+                                    error.put("file", file.getPath());
+                                    error.put("table", fileTable);
+                                    error.put("message", e.getMessage());
+                                    errors.add(error);
+                                }
+                                detail.put("failedFiles", failedFiles.incrementAndGet());
+                                if (atomic || isInterrupted() || isLimitExceeded()) {
+                                    throw e;
+                                }
+                            } finally {
+                                result.put("ms", System.currentTimeMillis() - start);
+                                results.put(result);
+                                progress = Math.round(loadedBytes.addAndGet(file.length()) * 10000 / total)
+                                        / 100.0;
+                            }
+                        }
+                    } finally {
+                        connections.put(fileConn);
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (java.util.concurrent.ExecutionException e) {
+                stopWorkers(executor);
+                for (Connection fileConn : fileConns) {
+                    fileConn.rollback();
+                }
+                throw (Exception) e.getCause();
+            }
+            if (atomic) {
+                for (Connection fileConn : fileConns) {
+                    fileConn.commit();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            for (Connection fileConn : fileConns) {
+                fileConn.close();
+                workerConns.remove(fileConn);
+            }
+        }
+        if (failedFiles.get() > 0) {
+            throw new Exception(failedFiles.get() + " of " + fileCount + " files failed");
+        }
+        progress = 100;
+    }
+
+    /**
+     * The files of the path: the files of a directory, or the files that match
+     * a glob such as /data/orders/part-*.csv or /data/**.json, in the order
+     * of their names or largest first.
+     */
+    private List<File> resolveFiles() throws IOException {
+        List<File> files = new ArrayList<>();
+        File dir = new File(this.path);
+        if (dir.isDirectory()) {
+            File[] parts = dir.listFiles(file -> file.isFile() && isSupported(file.getName()));
+            if (parts != null) {
+                files.addAll(Arrays.asList(parts));
+            }
+        } else {
+            // The directory before the first glob character is walked
+            String pattern = this.path.replace('\\', '/');
+            int glob = 0;
+            while (glob < pattern.length() && "*?[{".indexOf(pattern.charAt(glob)) < 0) {
+                glob++;
+            }
+            int slash = pattern.lastIndexOf('/', glob);
+            Path base = Paths.get(slash < 0 ? "." : slash == 0 ? "/" : pattern.substring(0, slash));
+            String relative = pattern.substring(slash + 1);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+            int depth = relative.contains("**") ? Integer.MAX_VALUE : relative.split("/").length;
+            if (Files.isDirectory(base)) {
+                try (Stream<Path> paths = Files.walk(base, depth)) {
+                    paths.filter(p -> Files.isRegularFile(p) && isSupported(p.getFileName().toString())
+                            && matcher.matches(base.relativize(p))).forEach(p -> files.add(p.toFile()));
+                }
+            }
+        }
+        if (order.equals("size")) {
+            // The largest files first, so that the last ones to finish are short
+            files.sort((a, b) -> Long.compare(b.length(), a.length()));
+        } else {
+            files.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+        }
+        return files;
+    }
+
+    /**
+     * The table of a file: the table of the first glob of tables that matches
+     * its name, or the table of the task.
+     */
+    private String tableFor(File file) {
+        if (tables != null) {
+            Path name = Paths.get(file.getName());
+            for (String glob : tables.keySet()) {
+                if (FileSystems.getDefault().getPathMatcher("glob:" + glob).matches(name)) {
+                    return tables.getString(glob);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * The mapping of the columns of a table, from mappings or the mapping of
+     * the task.
+     */
+    private JSONArray mappingFor(String table) throws Exception {
+        if (mappings != null && mappings.containsKey(table)) {
+            return mappings.getJSONArray(table);
+        }
+        if (mapping == null) {
+            throw new Exception("No mapping for table:" + table);
+        }
+        return JSONArray.parseArray(mapping);
+    }
+
+    private static boolean isGlob(String path) {
+        return path.contains("*") || path.contains("?") || path.contains("[") || path.contains("{");
+    }
+
+    private static boolean isSupported(String name) {
+        return name.endsWith(".xlsx") || name.endsWith(".csv") || name.endsWith(".ndjson")
+                || name.endsWith(".jsonl") || name.endsWith(".json");
+    }
+
+    private void clearTable(Connection conn, String table) throws Exception {
+        String sql = table.equals(this.table) ? this.clearTableSql : "DELETE FROM " + sqlTable(table);
         java.sql.Statement stmt = conn.createStatement();
         stmt.execute(sql);
         stmt.close();
     }
 
+    /**
+     * The name of a table in the SQL: table as given, the tables of tables
+     * quoted part by part like the columns, unless already quoted.
+     */
+    private String sqlTable(String table) {
+        if (table.equals(this.table) || identifierQuoteSymbol.isEmpty() || table.startsWith(identifierQuoteSymbol)) {
+            return table;
+        }
+        StringBuilder sql = new StringBuilder();
+        for (String part : table.split("\\.")) {
+            if (sql.length() > 0) {
+                sql.append(".");
+            }
+            sql.append(identifierQuoteSymbol).append(part).append(identifierQuoteSymbol);
+        }
+        return sql.toString();
+    }
+
     private String detectFileEncoding(File file) throws IOException {
         byte[] buf = new byte[4096];
         UniversalDetector detector = new UniversalDetector(null);
@@ -159,221 +525,328 @@ public class ImportThread extends ComThread {
         return encoding != null ? encoding : "UTF-8";
     }
 
-    private void importCsv(java.sql.Statement stmt, String mapping, String table, String identifierQuoteSymbol)
-            throws Exception {
+    /**
+     * Import a file of any format over a connection, in the transaction of the
+     * connection.
+     *
+     * @return the number of rows imported
+     */
+    private long importFile(Connection conn, File file, JSONArray mappingArray, String table) throws Exception {
+        String name = file.getName();
+        if (name.endsWith(".xlsx")) {
+            return importXlsx(conn, file, mappingArray, table);
+        } else if (name.endsWith(".csv")) {
+            return importCsv(conn, file, mappingArray, table);
+        } else if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return importNdjsonRange(conn, file, 0, file.length(), mappingArray,
+                    TypedBinder.insertSql(table, mappingArray, identifierQuoteSymbol));
+        } else {
+            return importJson(conn, file, mappingArray, table);
+        }
+    }
+
+    private long importCsv(Connection conn, File file, JSONArray mappingArray, String table) throws Exception {
         String delimiter = ",";
-        File file = new File(path);
         String encoding = detectFileEncoding(file);
 
-        JSONArray mappingArray = JSONArray.parseArray(mapping);
-
-        // 构建INSERT SQL前缀
-        StringBuilder insertSql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        TypedBinder binder = new TypedBinder(mappingArray);
+        int[] csvIndexes = new int[mappingArray.size()];
         for (int i = 0; i < mappingArray.size(); i++) {
-            JSONObject mappingObj = mappingArray.getJSONObject(i);
-            insertSql.append(identifierQuoteSymbol).append(mappingObj.getString("name")).append(identifierQuoteSymbol);
-            if (i < mappingArray.size() - 1) {
-                insertSql.append(",");
-            }
+            csvIndexes[i] = mappingArray.getJSONObject(i).getIntValue("index");
         }
-        insertSql.append(") VALUES (");
 
         // 使用OpenCSV读取CSV文件
         CSVParser parser = new CSVParserBuilder()
                 .withSeparator(delimiter.charAt(0))
                 .build();
-        try (CSVReader reader = new CSVReaderBuilder(new InputStreamReader(new FileInputStream(file), encoding))
-                .withCSVParser(parser)
-                .build()) {
+        try (PreparedStatement ps = conn.prepareStatement(
+                TypedBinder.insertSql(table, mappingArray, identifierQuoteSymbol));
+                CSVReader reader = new CSVReaderBuilder(new InputStreamReader(new FileInputStream(file), encoding))
+                        .withCSVParser(parser)
+                        .build()) {
             String[] headers = reader.readNext(); // 读取表头
             String[] line;
-            int batchSize = 1000;
-            int count = 0;
+            AdaptiveBatcher batcher = new AdaptiveBatcher(ps);
 
             while ((line = reader.readNext()) != null) {
-                StringBuilder values = new StringBuilder();
-                for (int i = 0; i < mappingArray.size(); i++) {
-                    JSONObject mappingObj = mappingArray.getJSONObject(i);
-                    int csvIndex = mappingObj.getIntValue("index");
-                    String value = line.length > csvIndex ? line[csvIndex] : "";
-                    // 处理SQL注入和特殊字符
-                    values.append("'").append(value.replace("'", "''")).append("'");
-                    if (i < mappingArray.size() - 1) {
-                        values.append(",");
-                    }
-                }
-
-                stmt.addBatch(insertSql.toString() + values + ")");
-                count++;
-
-                if (count >= batchSize) {
-                    stmt.executeBatch();
-                    stmt.clearBatch();
-                    count = 0;
+                long rowBytes = 0;
+                for (int i = 0; i < csvIndexes.length; i++) {
+                    String value = line.length > csvIndexes[i] ? line[csvIndexes[i]] : "";
+                    binder.bind(ps, i, value);
+                    rowBytes += AdaptiveBatcher.sizeOf(value);
                 }
+                ps.addBatch();
+                imported(batcher, batcher.added(rowBytes));
             }
 
-            if (count > 0) {
-                stmt.executeBatch();
-            }
+            imported(batcher, batcher.flush());
+            return batcher.getRows();
         }
     }
 
-    private void importJson(java.sql.Statement stmt, String mapping, String table, String identifierQuoteSymbol) throws Exception {
-        File file = new File(path);
-        String encoding = detectFileEncoding(file);
-        JSONArray mappingArray = JSONArray.parseArray(mapping);
-        
-        // 构建INSERT SQL前缀
-        StringBuilder insertSql = new StringBuilder("INSERT INTO ").append(table).append(" (");
-        for (int i = 0; i < mappingArray.size(); i++) {
-            JSONObject mappingObj = mappingArray.getJSONObject(i);
-            insertSql.append(identifierQuoteSymbol).append(mappingObj.getString("name")).append(identifierQuoteSymbol);
-            if (i < mappingArray.size() - 1) {
-                insertSql.append(",");
-            }
+    /**
+     * Import the first sheet of a workbook. EasyExcel reads the sheet row by
+     * row, and the batches are executed while it is read, so that only one
+     * batch of rows is held at a time.
+     */
+    private long importXlsx(Connection conn, File file, JSONArray mappingArray, String table) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement(
+                TypedBinder.insertSql(table, mappingArray, identifierQuoteSymbol))) {
+            AdaptiveBatcher batcher = new AdaptiveBatcher(ps);
+            ImportXlsxListener listener = new ImportXlsxListener(ps, mappingArray, batcher, this);
+            EasyExcel.read(file.getPath(), listener).sheet().doRead();
+            imported(batcher, batcher.flush());
+            return batcher.getRows();
         }
-        insertSql.append(") VALUES (");
-        
-        int batchSize = 1000;
-        int count = 0;
-        
+    }
+
+    private long importJson(Connection conn, File file, JSONArray mappingArray, String table) throws Exception {
+        String encoding = detectFileEncoding(file);
+        TypedBinder binder = new TypedBinder(mappingArray);
+
         // 使用FastJSON读取JSON文件
         String jsonContent = new String(Files.readAllBytes(file.toPath()), encoding);
-        
-        // 尝试解析为JSON数组
-        if (jsonContent.trim().startsWith("[")) {
-            JSONArray jsonArray = JSONArray.parseArray(jsonContent);
-            for (Object obj : jsonArray) {
-                if (obj instanceof JSONObject) {
-                    count = processJsonObject((JSONObject) obj, mappingArray, insertSql, stmt, batchSize, count);
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                TypedBinder.insertSql(table, mappingArray, identifierQuoteSymbol))) {
+            AdaptiveBatcher batcher = new AdaptiveBatcher(ps);
+            // 尝试解析为JSON数组
+            if (jsonContent.trim().startsWith("[")) {
+                JSONArray jsonArray = JSONArray.parseArray(jsonContent);
+                for (Object obj : jsonArray) {
+                    if (obj instanceof JSONObject) {
+                        processJsonObject((JSONObject) obj, mappingArray, binder, ps, batcher);
+                    }
                 }
             }
-        } 
-        // 解析为单个JSON对象
-        else if (jsonContent.trim().startsWith("{")) {
-            JSONObject jsonObject = JSONObject.parseObject(jsonContent);
-            count = processJsonObject(jsonObject, mappingArray, insertSql, stmt, batchSize, count);
-        } else {
-            throw new Exception("Invalid JSON format");
-        }
-        
-        // 执行剩余批次
-        if (count > 0) {
-            stmt.executeBatch();
+            // 解析为单个JSON对象
+            else if (jsonContent.trim().startsWith("{")) {
+                JSONObject jsonObject = JSONObject.parseObject(jsonContent);
+                processJsonObject(jsonObject, mappingArray, binder, ps, batcher);
+            } else {
+                throw new Exception("Invalid JSON format");
+            }
+
+            // 执行剩余批次
+            imported(batcher, batcher.flush());
+            return batcher.getRows();
         }
     }
-    
-    private int processJsonObject(JSONObject jsonObject, JSONArray mappingArray, StringBuilder insertSql, 
-                                 java.sql.Statement stmt, int batchSize, int count) throws Exception {
-        // 构建VALUES部分
-        StringBuilder values = new StringBuilder();
+
+    private void processJsonObject(JSONObject jsonObject, JSONArray mappingArray, TypedBinder binder,
+                                 PreparedStatement ps, AdaptiveBatcher batcher) throws Exception {
+        long rowBytes = 0;
         for (int i = 0; i < mappingArray.size(); i++) {
-            JSONObject mappingObj = mappingArray.getJSONObject(i);
-            String fieldName = mappingObj.getString("name");
+            String fieldName = mappingArray.getJSONObject(i).getString("name");
             Object value = jsonObject.get(fieldName);
-            
-            // 处理空值和字符串转义
-            if (value == null) {
-                values.append("NULL");
-            } else {
-                String strValue = value.toString().replace("'", "''");
-                values.append("'").append(strValue).append("'");
-            }
-            
-            if (i < mappingArray.size() - 1) {
-                values.append(",");
-            }
-        }
-        
-        stmt.addBatch(insertSql.toString() + values + ")");
-        count++;
-        
-        // 达到批次大小执行批量插入
-        if (count >= batchSize) {
-            stmt.executeBatch();
-            stmt.clearBatch();
-            count = 0;
-        }
-        
-        return count;
+            binder.bind(ps, i, value);
+            rowBytes += AdaptiveBatcher.sizeOf(value);
+        }
+        ps.addBatch();
+
+        // 批次满了执行批量插入
+        imported(batcher, batcher.added(rowBytes));
     }
 
-}
+    /**
+     * Import a JSON Lines file, one object per line.
+     * With parallel > 1 the file is split into byte ranges at line boundaries
+     * and every range is loaded over its own connection. The ranges are only
+     * committed once all of them have been loaded, and all are rolled back if
+     * one fails.
+     */
+    private void importNdjson(File file, JSONArray mappingArray, String table) throws Exception {
+        String insertSql = TypedBinder.insertSql(table, mappingArray, identifierQuoteSymbol);
+        long[] bounds = splitLines(file, parallel);
+        if (bounds.length == 2) {
+            importNdjsonRange(conn, file, bounds[0], bounds[1], mappingArray, insertSql);
+            return;
+        }
+        if (this.isClear) {
+            // The ranges insert over their own connections, they would wait for
+            // the locks of an uncommitted DELETE. The clear is committed first.
+            this.conn.commit();
+        }
+        List<Connection> rangeConns = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(bounds.length - 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                Connection rangeConn = BaseService.openConnection(datasourceJson);
+                rangeConn.setAutoCommit(false);
+                rangeConns.add(rangeConn);
+                workerConns.add(rangeConn);
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                futures.add(executor.submit(() -> {
+                    importNdjsonRange(rangeConn, file, start, end, mappingArray, insertSql);
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (java.util.concurrent.ExecutionException e) {
+                stopWorkers(executor);
+                for (Connection rangeConn : rangeConns) {
+                    rangeConn.rollback();
+                }
+                throw (Exception) e.getCause();
+            }
+            for (Connection rangeConn : rangeConns) {
+                rangeConn.commit();
+            }
+        } finally {
+            executor.shutdownNow();
+            for (Connection rangeConn : rangeConns) {
+                rangeConn.close();
+                workerConns.remove(rangeConn);
+            }
+        }
+    }
 
-class ImportXlsxListener implements ReadListener<Map<Integer, String>> {
-    private List<String> list;
-    private java.sql.Statement stmt;
     /**
-     * table: string;
-     * name: string;
-     * type: string;
-     * displayType?: string;
-     * comment?: string;
-     * isNullable?: boolean;
-     * defaultValue?: string | number | boolean | null;
-     * autoIncrement?: boolean;
-     * length?: number;
-     * scale?: number;
-     * position?: number;
-     * index:number;
-     * head:string;
-     * catalog: FieldTypeCategory;
+     * Stop the workers and wait until none of them uses its connection.
      */
-    private JSONArray mappingArray;
-    private String insertSql;
+    private static void stopWorkers(ExecutorService executor) throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
 
-    public ImportXlsxListener(java.sql.Statement stmt, String mapping, String table, String identifierQuoteSymbol) {
-        this.stmt = stmt;
-        this.mappingArray = JSONArray.parseArray(mapping);
+    private long importNdjsonRange(Connection rangeConn, File file, long start, long end, JSONArray mappingArray,
+            String insertSql) throws Exception {
+        TypedBinder binder = new TypedBinder(mappingArray);
+        try (PreparedStatement ps = rangeConn.prepareStatement(insertSql);
+                FileInputStream fis = new FileInputStream(file)) {
+            fis.getChannel().position(start);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new RangeInputStream(fis, end - start), StandardCharsets.UTF_8));
+            AdaptiveBatcher batcher = new AdaptiveBatcher(ps);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                processJsonObject(JSONObject.parseObject(line), mappingArray, binder, ps, batcher);
+            }
+            imported(batcher, batcher.flush());
+            return batcher.getRows();
+        }
+    }
 
-        this.insertSql = "insert into " + table + "(";
-        for (int i = 0; i < mappingArray.size(); i++) {
-            JSONObject mappingObj = mappingArray.getJSONObject(i);
-            String name = mappingObj.getString("name");
-            insertSql += identifierQuoteSymbol + name + identifierQuoteSymbol;
-            if (i < mappingArray.size() - 1) {
-                insertSql += ",";
+    /**
+     * Split a file into byte ranges that start right after a line break.
+     *
+     * @return the start of every range followed by the length of the file
+     */
+    private static long[] splitLines(File file, int parts) throws IOException {
+        long length = file.length();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (int i = 1; i < parts; i++) {
+                long bound = Math.max(length * i / parts, bounds.get(bounds.size() - 1));
+                raf.seek(bound);
+                // Move to the start of the next line
+                int c = raf.read();
+                while (c >= 0 && c != '\n') {
+                    c = raf.read();
+                }
+                bound = raf.getFilePointer();
+                if (bound < length && bound > bounds.get(bounds.size() - 1)) {
+                    bounds.add(bound);
+                }
             }
         }
-        insertSql += ") values (";
+        bounds.add(length);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
     }
 
-    public List<String> getList() {
-        return list;
+    /**
+     * An input stream that ends after a given number of bytes.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int c = super.read();
+            if (c >= 0) {
+                remaining--;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+}
+
+/**
+ * Binds every row of the sheet to the INSERT statement as it is read.
+ */
+class ImportXlsxListener implements ReadListener<Map<Integer, String>> {
+    private PreparedStatement ps;
+    // The column of the sheet of every mapped column
+    private int[] indexes;
+    private TypedBinder binder;
+    // Executes the batch while the sheet is read
+    private AdaptiveBatcher batcher;
+    private ImportThread importThread;
+
+    public ImportXlsxListener(PreparedStatement ps, JSONArray mappingArray, AdaptiveBatcher batcher,
+            ImportThread importThread) {
+        this.ps = ps;
+        this.batcher = batcher;
+        this.importThread = importThread;
+        this.binder = new TypedBinder(mappingArray);
+        this.indexes = new int[mappingArray.size()];
+        for (int i = 0; i < mappingArray.size(); i++) {
+            indexes[i] = mappingArray.getJSONObject(i).getIntValue("index");
+        }
     }
 
     @Override
     public void invoke(Map<Integer, String> data, AnalysisContext context) {
         // 判断是否是第一行
-        if (context.readRowHolder().getRowIndex() == 0) {
-
-        } else if (data.size() > 0) {
-            StringBuffer sql = new StringBuffer(insertSql);
-            for (int i = 0; i < mappingArray.size(); i++) {
-                JSONObject mappingObj = mappingArray.getJSONObject(i);
-                int index = mappingObj.getInteger("index");
-                String val = null;
-                if (data.containsKey(index)) {
-                    val = data.get(index);
-                }
-                String catalog = mappingObj.getString("catalog");
-                if ("Integer Fixed-Point Floating-Point  Binary  Bit-Value Enumeration".indexOf(catalog) >= 0) {
-                    sql.append(val);
-                } else {
-                    sql.append("'" + val + "'");
-                }
-                if (i < mappingArray.size() - 1) {
-                    sql.append(",");
-                }
-            }
-
-            try {
-                this.stmt.addBatch(sql.toString());
-            } catch (SQLException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+        if (context.readRowHolder().getRowIndex() == 0 || data.isEmpty()) {
+            return;
+        }
+        try {
+            long rowBytes = 0;
+            for (int i = 0; i < indexes.length; i++) {
+                String value = data.get(indexes[i]);
+                binder.bind(ps, i, value);
+                rowBytes += AdaptiveBatcher.sizeOf(value);
             }
+            ps.addBatch();
+            importThread.imported(batcher, batcher.added(rowBytes));
+        } catch (SQLException e) {
+            // Stop reading the sheet, the import is rolled back
+            throw new RuntimeException(e);
         }
     }
 
@@ -382,4 +855,4 @@ class ImportXlsxListener implements ReadListener<Map<Integer, String>> {
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,586 @@
+package com.udb.server.service.thread;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.model.binary.BinaryColumn;
+import com.udb.model.binary.BinaryDumpReader;
+import com.udb.server.service.BaseService;
+import com.udb.server.service.ComThread;
+import com.udb.server.service.jdbc.DatabaseFamily;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.udb.server.service.jdbc.SqlScriptReader;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * This class extends the Thread class and is used to restore SQL and binary
+ * (.udbb) dumps written by DumpThread in a separate thread.
+ * The dump is indexed first. Tables are then dropped and created in dependency
+ * order, and the data of independent tables is loaded in parallel over several
+ * connections with batched execution.
+ */
+public class RestoreThread extends ComThread {
+    private static final Pattern TABLE_MARKER = Pattern.compile("^---\\s*Dump Table:(.*?)-*$");
+    private static final Pattern DATA_MARKER = Pattern.compile("^---\\s*Dump Table Data:(.*?)-*$");
+    private static final Pattern TOTAL_MARKER = Pattern.compile("^---\\s*Total:(\\d+)-*$");
+    private static final Pattern INSERT_TABLE = Pattern.compile(
+            "^INSERT\\s+INTO\\s+([`\"\\[]?[\\w$.]+[`\"\\]]?)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "^CREATE\\s+(?:\\w+\\s+)*TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?([`\"\\[]?[\\w$.]+[`\"\\]]?)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern REFERENCES = Pattern.compile(
+            "REFERENCES\\s+([`\"\\[]?[\\w$.]+[`\"\\]]?)", Pattern.CASE_INSENSITIVE);
+
+    private JSONObject datasourceJson;
+    private List<String> paths = new ArrayList<>();
+    private int parallel = 4;
+    private int batchSize = 1000;
+
+    // Statements outside of any table section, executed first
+    private List<String> preamble = new ArrayList<>();
+    private Map<String, RestoreTable> tableMap = new LinkedHashMap<>();
+    private Map<String, Map<String, Object>> tableProgress = new ConcurrentHashMap<>();
+    private AtomicLong restoredRows = new AtomicLong();
+    private long totalRows;
+
+    public RestoreThread(String sessionId, Map<String, Object> body) {
+        System.out.println("RestoreThread created");
+        System.out.println("sessionId: " + sessionId);
+        this.sessionId = sessionId;
+        this.datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        // A dump file, a directory of dump parts, or a list of dump parts
+        if (body.containsKey("paths")) {
+            JSONArray pathsArray = JSONArray.parseArray(body.get("paths").toString());
+            for (int i = 0; i < pathsArray.size(); i++) {
+                this.paths.add(pathsArray.getString(i));
+            }
+        } else {
+            this.paths.add(body.get("path").toString());
+        }
+        if (body.containsKey("parallel")) {
+            this.parallel = Math.max(1, Integer.parseInt(body.get("parallel").toString()));
+        }
+        this.parallel = Math.min(parallel, BaseService.getWorkerLimit(datasourceJson));
+        if (body.containsKey("batchSize")) {
+            this.batchSize = Math.max(1, Integer.parseInt(body.get("batchSize").toString()));
+        }
+    }
+
+    public String getType() {
+        return "restore";
+    }
+
+    public String getLable() {
+        return datasourceJson.getString("name");
+    }
+
+    @Override
+    public String getDatasourceKey() {
+        return BaseService.getDataSourceKey(datasourceJson);
+    }
+
+    /**
+     * One connection per table loaded at once.
+     */
+    @Override
+    public Map<String, Integer> getWorkerConnections() {
+        return Map.of(getDatasourceKey(), parallel);
+    }
+
+    @Override
+    protected void execute() {
+        ExecutorService executor = null;
+        try {
+            startTime = new java.util.Date();
+            System.out.println("Start executing");
+            HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
+            if (dataSource == null) {
+                System.out.println("datasource does not exist");
+                message = "datasource does not exist";
+                endTime = new java.util.Date();
+                status = 830;
+                return;
+            }
+            System.out.println("datasource exists");
+            this.conn = dataSource.getConnection();
+            if (results == null) {
+                results = new java.util.concurrent.LinkedBlockingQueue<>();
+            }
+            List<File> files = resolveFiles();
+            message = "Index dump files";
+            for (File file : files) {
+                if (file.getName().endsWith(".udbb")) {
+                    indexBinaryFile(file);
+                } else {
+                    indexFile(file);
+                }
+            }
+            detail.put("tables", tableProgress);
+            List<String> order = dependencyOrder();
+            // Structure
+            message = "Restore table structure";
+            Statement stmt = conn.createStatement();
+            for (String sql : preamble) {
+                stmt.execute(sql);
+            }
+            // Drop children before their parents, create parents before their children
+            for (int i = order.size() - 1; i >= 0; i--) {
+                for (String sql : tableMap.get(order.get(i)).drops) {
+                    stmt.execute(sql);
+                }
+            }
+            for (String table : order) {
+                for (String sql : tableMap.get(table).creates) {
+                    stmt.execute(sql);
+                }
+            }
+            stmt.close();
+            // Data, one level of the dependency graph after the other
+            message = "Restore table data";
+            int workers = Math.min(parallel, Math.max(1, tableMap.size()));
+            BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(workers);
+            for (int i = 0; i < workers; i++) {
+                Connection workerConn = BaseService.openConnection(datasourceJson);
+                workerConn.setAutoCommit(false);
+                workerConns.add(workerConn);
+                connections.add(workerConn);
+            }
+            executor = Executors.newFixedThreadPool(workers);
+            for (List<String> level : dependencyLevels(order)) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (String table : level) {
+                    RestoreTable restoreTable = tableMap.get(table);
+                    if (restoreTable.segments.isEmpty()) {
+                        continue;
+                    }
+                    futures.add(executor.submit(() -> {
+                        Connection workerConn = connections.take();
+                        try {
+                            restoreTableData(workerConn, restoreTable);
+                        } finally {
+                            connections.put(workerConn);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            progress = 100;
+            message = "Execute success";
+            status = 200;
+            endTime = new java.util.Date();
+            System.out.println("Execute success");
+        } catch (Exception e) {
+            e.printStackTrace();
+            Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+            message = cause.getMessage();
+            status = 500;
+            endTime = new java.util.Date();
+        } finally {
+            // The dump may have dropped and created tables
+            MetadataCache.invalidate(getDatasourceKey());
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Connection workerConn : workerConns) {
+                try {
+                    workerConn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            workerConns.clear();
+            try {
+                if (conn != null) {
+                    conn.close();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private List<File> resolveFiles() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] parts = file.listFiles((dir, name) -> name.endsWith(".sql") || name.endsWith(".udbb"));
+                if (parts != null) {
+                    Arrays.sort(parts);
+                    files.addAll(Arrays.asList(parts));
+                }
+            } else if (file.exists()) {
+                files.add(file);
+            } else {
+                throw new Exception("File does not exist:" + path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Read a dump file once and remember, for every table, its structure
+     * statements and where its data statements are in the file.
+     */
+    private void indexFile(File file) throws Exception {
+        try (SqlScriptReader reader = new SqlScriptReader(file)) {
+            RestoreTable current = null;
+            boolean inData = false;
+            Segment segment = null;
+            String item;
+            while ((item = reader.next()) != null) {
+                if (item.startsWith("--")) {
+                    Matcher matcher;
+                    if ((matcher = DATA_MARKER.matcher(item)).matches()) {
+                        current = table(matcher.group(1).trim());
+                        inData = true;
+                    } else if ((matcher = TOTAL_MARKER.matcher(item)).matches()) {
+                        if (current != null) {
+                            current.total += Long.parseLong(matcher.group(1));
+                            totalRows += Long.parseLong(matcher.group(1));
+                        }
+                    } else if ((matcher = TABLE_MARKER.matcher(item)).matches()) {
+                        current = table(matcher.group(1).trim());
+                        inData = false;
+                    }
+                    continue;
+                }
+                Matcher insert = INSERT_TABLE.matcher(item);
+                if (insert.find()) {
+                    RestoreTable target = current;
+                    if (target == null || !inData) {
+                        target = table(unquote(insert.group(1)));
+                    }
+                    if (segment == null || segment.table != target) {
+                        segment = new Segment(target, file, reader.getItemStart());
+                        target.segments.add(segment);
+                    }
+                    segment.end = reader.getPosition();
+                    continue;
+                }
+                segment = null;
+                Matcher create = CREATE_TABLE.matcher(item);
+                RestoreTable target = current;
+                if (create.find()) {
+                    target = table(unquote(create.group(1)));
+                }
+                if (target == null) {
+                    preamble.add(item);
+                } else if (item.regionMatches(true, 0, "DROP", 0, 4)) {
+                    target.drops.add(item);
+                } else {
+                    target.creates.add(item);
+                    Matcher references = REFERENCES.matcher(item);
+                    while (references.find()) {
+                        target.dependsOn.add(unquote(references.group(1)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the table headers of a binary dump and skip over its row groups,
+     * remembering where the data of every table is in the file.
+     */
+    private void indexBinaryFile(File file) throws Exception {
+        try (BinaryDumpReader reader = new BinaryDumpReader(file)) {
+            while (reader.nextTable()) {
+                RestoreTable target = table(reader.getTableName());
+                if (!reader.getDropSql().isEmpty()) {
+                    target.drops.add(reader.getDropSql());
+                }
+                if (!reader.getCreateSql().isEmpty()) {
+                    target.creates.add(reader.getCreateSql());
+                    Matcher references = REFERENCES.matcher(reader.getCreateSql());
+                    while (references.find()) {
+                        target.dependsOn.add(unquote(references.group(1)));
+                    }
+                }
+                Segment segment = new Segment(target, file, reader.getTableStart());
+                segment.binary = true;
+                long total = 0;
+                long rows;
+                while ((rows = reader.skipRowGroup()) >= 0) {
+                    total += rows;
+                }
+                segment.end = reader.getPosition();
+                if (total > 0) {
+                    target.segments.add(segment);
+                    target.total += total;
+                    totalRows += total;
+                }
+            }
+        }
+    }
+
+    private RestoreTable table(String name) {
+        return tableMap.computeIfAbsent(name, RestoreTable::new);
+    }
+
+    private static String unquote(String name) {
+        return name.replaceAll("[`\"\\[\\]]", "");
+    }
+
+    /**
+     * Sort the tables so that referenced tables come before the tables that
+     * reference them. Tables in a reference cycle keep their dump order.
+     */
+    private List<String> dependencyOrder() {
+        List<String> order = new ArrayList<>();
+        Set<String> visiting = new LinkedHashSet<>();
+        for (String table : tableMap.keySet()) {
+            visit(table, visiting, order);
+        }
+        return order;
+    }
+
+    private void visit(String table, Set<String> visiting, List<String> order) {
+        if (order.contains(table) || visiting.contains(table) || !tableMap.containsKey(table)) {
+            return;
+        }
+        visiting.add(table);
+        for (String parent : tableMap.get(table).dependsOn) {
+            visit(parent, visiting, order);
+        }
+        visiting.remove(table);
+        order.add(table);
+    }
+
+    /**
+     * Group the tables into levels. Tables in the same level do not depend on
+     * each other and are loaded at the same time.
+     */
+    private List<List<String>> dependencyLevels(List<String> order) {
+        Map<String, Integer> levelMap = new HashMap<>();
+        List<List<String>> levels = new ArrayList<>();
+        for (String table : order) {
+            int level = 0;
+            for (String parent : tableMap.get(table).dependsOn) {
+                if (levelMap.containsKey(parent) && !parent.equals(table)) {
+                    level = Math.max(level, levelMap.get(parent) + 1);
+                }
+            }
+            levelMap.put(table, level);
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(table);
+        }
+        return levels;
+    }
+
+    private void restoreTableData(Connection workerConn, RestoreTable table) throws Exception {
+        long start = System.currentTimeMillis();
+        Map<String, Object> tableStatus = new ConcurrentHashMap<>();
+        tableStatus.put("rows", 0L);
+        tableStatus.put("total", table.total);
+        tableStatus.put("status", "running");
+        tableProgress.put(table.name, tableStatus);
+        long rows = 0;
+        try (Statement stmt = workerConn.createStatement()) {
+            for (Segment segment : table.segments) {
+                if (segment.binary) {
+                    rows = restoreBinarySegment(workerConn, segment, tableStatus, rows);
+                    continue;
+                }
+                try (SqlScriptReader reader = new SqlScriptReader(segment.file)) {
+                    reader.seek(segment.start);
+                    int count = 0;
+                    String item;
+                    while (reader.getPosition() < segment.end && (item = reader.next()) != null) {
+                        if (item.startsWith("--")) {
+                            continue;
+                        }
+                        stmt.addBatch(item);
+                        count++;
+                        if (count >= batchSize) {
+                            rows += flush(workerConn, stmt, count, tableStatus, rows);
+                            count = 0;
+                        }
+                    }
+                    if (count > 0) {
+                        rows += flush(workerConn, stmt, count, tableStatus, rows);
+                    }
+                }
+            }
+            tableStatus.put("status", "success");
+        } catch (Exception e) {
+            workerConn.rollback();
+            tableStatus.put("status", "fail");
+            tableStatus.put("message", String.valueOf(e.getMessage()));
+            throw e;
+        } finally {
+            Map<String, Object> result = new HashMap<>();
+            result.put("table", table.name);
+            result.put("rows", rows);
+            result.put("status", tableStatus.get("status"));
+            result.put("message", tableStatus.get("message"));
+            result.put("elapsed", System.currentTimeMillis() - start);
+            results.put(result);
+        }
+    }
+
+    /**
+     * Insert the rows of a table of a binary dump with a prepared statement,
+     * binding the decoded values with their JDBC types.
+     */
+    private long restoreBinarySegment(Connection workerConn, Segment segment, Map<String, Object> tableStatus,
+            long rows) throws Exception {
+        try (BinaryDumpReader reader = new BinaryDumpReader(segment.file)) {
+            reader.seek(segment.start);
+            reader.nextTable();
+            List<BinaryColumn> columns = reader.getColumns();
+            String quote = workerConn.getMetaData().getIdentifierQuoteString().trim();
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(segment.table.name).append(" (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? "," : "").append(quote).append(columns.get(i).getName()).append(quote);
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i > 0 ? ",?" : "?");
+            }
+            sql.append(")");
+            boolean postgres = DatabaseFamily.of(workerConn) == DatabaseFamily.POSTGRESQL;
+            Integer[] types = new Integer[columns.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = bindType(columns.get(i), postgres);
+            }
+            try (PreparedStatement ps = workerConn.prepareStatement(sql.toString())) {
+                int count = 0;
+                List<Object[]> group;
+                while ((group = reader.nextRowGroup()) != null) {
+                    for (Object[] row : group) {
+                        for (int i = 0; i < row.length; i++) {
+                            if (row[i] == null) {
+                                ps.setNull(i + 1, columns.get(i).getJdbcType());
+                            } else if (types[i] == null) {
+                                ps.setObject(i + 1, row[i]);
+                            } else {
+                                ps.setObject(i + 1, row[i], types[i]);
+                            }
+                        }
+                        ps.addBatch();
+                        count++;
+                        if (count >= batchSize) {
+                            rows += flush(workerConn, ps, count, tableStatus, rows);
+                            count = 0;
+                        }
+                    }
+                }
+                if (count > 0) {
+                    rows += flush(workerConn, ps, count, tableStatus, rows);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * The JDBC type a decoded value is bound with, or null to bind it as it is.
+     * PostgreSQL only casts a string to a uuid, json, inet or enum column when
+     * it is sent untyped, as OTHER. Arrays and structured values are bound as
+     * decoded, the driver cannot convert a string to them.
+     */
+    private static Integer bindType(BinaryColumn column, boolean postgres) {
+        int type = column.getJdbcType();
+        if (postgres && column.getKind() == BinaryColumn.Kind.STRING) {
+            String name = column.getTypeName() == null ? "" : column.getTypeName().toLowerCase();
+            if (type == Types.OTHER || !(name.contains("char") || name.equals("text") || name.equals("name"))) {
+                return Types.OTHER;
+            }
+        }
+        if (column.getKind() == BinaryColumn.Kind.DECIMAL) {
+            // An unsigned BIGINT does not fit in a long
+            return Types.DECIMAL;
+        }
+        switch (type) {
+            case Types.ARRAY:
+            case Types.STRUCT:
+            case Types.REF:
+            case Types.DATALINK:
+            case Types.ROWID:
+            case Types.SQLXML:
+            case Types.JAVA_OBJECT:
+            case Types.DISTINCT:
+            case Types.OTHER:
+                return null;
+            default:
+                return type;
+        }
+    }
+
+    private int flush(Connection workerConn, Statement stmt, int count, Map<String, Object> tableStatus,
+            long rows) throws SQLException {
+        if (isInterrupted()) {
+            throw new SQLException("Task has been terminated");
+        }
+        stmt.executeBatch();
+        stmt.clearBatch();
+        workerConn.commit();
+        tableStatus.put("rows", rows + count);
+        long restored = restoredRows.addAndGet(count);
+        checkLimits(restored, 0);
+        if (totalRows > 0) {
+            progress = Math.min(99, Math.round(restored * 10000.0 / totalRows) / 100.0);
+        }
+        return count;
+    }
+
+    private static class RestoreTable {
+        private final String name;
+        private final List<String> drops = new ArrayList<>();
+        private final List<String> creates = new ArrayList<>();
+        private final Set<String> dependsOn = new LinkedHashSet<>();
+        private final List<Segment> segments = new ArrayList<>();
+        private long total;
+
+        RestoreTable(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A run of data statements of one table inside a dump file. In a binary
+     * dump it is a whole table, and the offsets are byte offsets.
+     */
+    private static class Segment {
+        private final RestoreTable table;
+        private final File file;
+        private final long start;
+        private long end;
+        private boolean binary;
+
+        Segment(RestoreTable table, File file, long start) {
+            this.table = table;
+            this.file = file;
+            this.start = start;
+        }
+    }
+}
@@ -3,10 +3,16 @@ package com.udb.server.service.thread;
 import java.sql.SQLException;
 import java.util.Map;
 
-import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
 import com.udb.server.service.BaseService;
 import com.udb.server.service.ComThread;
+import com.udb.server.service.SlowStatementLog;
+import com.udb.server.service.StartupMetrics;
+import com.udb.server.service.jdbc.AdaptiveBatcher;
+import com.udb.server.service.jdbc.DatabaseFamily;
+import com.udb.server.service.jdbc.FetchStrategy;
+import com.udb.server.service.jdbc.MetadataCache;
+import com.udb.server.service.jdbc.TableSampler;
 import com.zaxxer.hikari.HikariDataSource;
 
 /**
@@ -17,16 +23,35 @@ import com.zaxxer.hikari.HikariDataSource;
  * It also provides methods for managing the execution of SQL statements in a
  * transaction.
  * It uses HikariCP for connection pooling and FastJSON2 for JSON processing.
+ * With preview, a table name, it returns a sample of sampleRows rows of the
+ * table instead, marked as sampled, with the estimated number of rows.
+ * The result of every statement has the breakdown of its time in
+ * milliseconds: executeMs, firstRowMs (from the start of the execution),
+ * fetchMs (in the driver), materializeMs (turning the rows into result values)
+ * and elapsedMs, with rowCount and the approximate bytes of the rows.
  */
 public class SQLThread extends ComThread {
     private String sql;
-    private String datasource;
+    private JSONObject datasourceJson;
+    // Rows and estimated bytes read, for the limits of the task
+    private long readRows;
+    private long readBytes;
+    // preview: the table to sample instead of the sql
+    private String preview;
+    private int sampleRows = 200;
+    private TableSampler.Sample sample;
 
     public SQLThread(String sessionId, Map<String, Object> body) {
         this.sessionId = sessionId;
-        this.sql = body.get("sql").toString();
-        this.datasource = body.get("datasource").toString();
-        this.isTransaction = body.get("transaction").toString().equals("true");
+        if (body.containsKey("preview")) {
+            this.preview = body.get("preview").toString();
+            if (body.containsKey("sampleRows")) {
+                this.sampleRows = Math.max(1, Integer.parseInt(body.get("sampleRows").toString()));
+            }
+        }
+        this.sql = preview != null && !body.containsKey("sql") ? "" : body.get("sql").toString();
+        this.datasourceJson = BaseService.parseDatasource(body.get("datasource").toString());
+        this.isTransaction = body.containsKey("transaction") && body.get("transaction").toString().equals("true");
     }
 
     public String getType() {
@@ -34,6 +59,9 @@ public class SQLThread extends ComThread {
     }
 
     public String getLable() {
+        if (preview != null) {
+            return "Preview:" + preview;
+        }
         if (sql.length() > 30) {
             return sql.substring(0, 30) + "...";
         }
@@ -41,12 +69,16 @@ public class SQLThread extends ComThread {
     }
 
     @Override
-    public void run() {
+    public String getDatasourceKey() {
+        return BaseService.getDataSourceKey(datasourceJson);
+    }
+
+    @Override
+    protected void execute() {
         try {
             startTime = new java.util.Date();
             System.out.println("Start executing");
             // 创建数据源
-            JSONObject datasourceJson = JSONObject.parseObject(datasource);
             HikariDataSource dataSource = BaseService.getDataSource(datasourceJson);
             if (dataSource == null) {
                 System.out.println("datasource does not exist");
@@ -57,12 +89,17 @@ public class SQLThread extends ComThread {
 
             }
             System.out.println("datasource exists");
-            String[] sqls = sql.split(";");
             // Create a connection
             conn = dataSource.getConnection();
             if (isTransaction) {
                 conn.setAutoCommit(false);
             }
+            if (preview != null) {
+                // A sample of the table, whatever its size
+                sample = TableSampler.plan(conn, preview, sampleRows);
+                sql = sample.getSql();
+            }
+            String[] sqls = preview != null ? new String[] { sql } : sql.split(";");
             // Execute query statements
             if (sqls.length > 0) {
                 if (results == null) {
@@ -71,6 +108,9 @@ public class SQLThread extends ComThread {
                 for (int i = 0; i < sqls.length; i++) {
                     String sql = sqls[i];
                     query(sql, i);
+                    if (isLimitExceeded()) {
+                        throw new SQLException("Task limit exceeded");
+                    }
                     progress = Math.round(i * 10000 / sqls.length) * 100.0;
                     message = "Execute sql:" + sql;
                 }
@@ -105,10 +145,42 @@ public class SQLThread extends ComThread {
      * @throws Exception
      */
     private void query(String sql, long index) throws Exception {
+        long start = System.nanoTime();
+        boolean ownTransaction = false;
+        boolean succeeded = false;
         try {
             System.out.println("Execute sql:" + sql);
-            java.sql.Statement stmt = conn.createStatement();
+            // PostgreSQL only reads a query through a cursor outside of
+            // autocommit, a lone query gets a transaction of its own
+            if (!isTransaction && isQuery(sql) && conn.getAutoCommit()
+                    && DatabaseFamily.of(conn) == DatabaseFamily.POSTGRESQL) {
+                conn.setAutoCommit(false);
+                ownTransaction = true;
+            }
+            stmt = conn.createStatement();
+            watch(stmt);
+            // Stream the rows
+            FetchStrategy.apply(conn, stmt, FetchStrategy.DEFAULT_FETCH_SIZE);
+            // The driver stops at the row past the limit, so that a streamed
+            // result is not read to its end when the statement is closed
+            long limit = maxRows > 0 ? Math.max(1, maxRows - readRows + 1) : Integer.MAX_VALUE;
+            if (sample != null) {
+                limit = Math.min(limit, sample.getMaxRows());
+            }
+            if (limit < Integer.MAX_VALUE) {
+                stmt.setMaxRows((int) limit);
+            }
+            start = System.nanoTime();
             boolean isResult = stmt.execute(sql);
+            long executeNanos = System.nanoTime() - start;
+            // -1 until the first row is read
+            long firstRowNanos = -1;
+            long fetchNanos = 0;
+            long materializeNanos = 0;
+            long bytes = 0;
+            if (MetadataCache.isDdl(sql)) {
+                MetadataCache.invalidate(getDatasourceKey());
+            }
             java.util.List<Map<String, Object>> columns = new java.util.ArrayList<>();
             java.util.List<Map<String, Object>> rows = new java.util.ArrayList<>();
             if (isResult) {
@@ -122,12 +194,39 @@ public class SQLThread extends ComThread {
                     column.put("columnType", rs.getMetaData().getColumnType(i));
                     columns.add(column);
                 }
-                while (rs.next()) {
-                    Map<String, Object> row = new java.util.HashMap<>();
-                    for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-                        row.put(rs.getMetaData().getColumnName(i), rs.getObject(i));
+                try {
+                    while (true) {
+                        // The driver reads the rows from the database in rs.next()
+                        long fetchStart = System.nanoTime();
+                        boolean hasRow = rs.next();
+                        long fetchEnd = System.nanoTime();
+                        fetchNanos += fetchEnd - fetchStart;
+                        if (!hasRow) {
+                            break;
+                        }
+                        if (firstRowNanos < 0) {
+                            firstRowNanos = fetchEnd - start;
+                        }
+                        Map<String, Object> row = new java.util.HashMap<>();
+                        long rowBytes = 0;
+                        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                            Object value = rs.getObject(i);
+                            row.put(rs.getMetaData().getColumnName(i), value);
+                            rowBytes += AdaptiveBatcher.sizeOf(value);
+                        }
+                        rows.add(row);
+                        materializeNanos += System.nanoTime() - fetchEnd;
+                        bytes += rowBytes;
+                        readBytes += rowBytes;
+                        // The value and the map entry that holds it
+                        retainedBytes += rowBytes + rs.getMetaData().getColumnCount() * 48L;
+                        checkLimits(++readRows, readBytes);
                     }
-                    rows.add(row);
+                } catch (Exception e) {
+                    // Stop the statement, closing it would read the rest of a
+                    // streamed result
+                    cancelStatement();
+                    throw e;
                 }
                 rs.close();
             } else {
@@ -151,7 +250,21 @@ public class SQLThread extends ComThread {
             result.put("sql", sql);
             result.put("status", "success");
             result.put("message", "Execute success");
-            System.out.println(JSON.toJSONString(result));
+            if (sample != null) {
+                result.putAll(sample.getInfo());
+            }
+            result.put("executeMs", millis(executeNanos));
+            result.put("firstRowMs", firstRowNanos < 0 ? null : millis(firstRowNanos));
+            result.put("fetchMs", millis(fetchNanos));
+            result.put("materializeMs", millis(materializeNanos));
+            result.put("rowCount", isResult ? rows.size() : 0);
+            result.put("bytes", bytes);
+            double elapsedMs = millis(System.nanoTime() - start);
+            result.put("elapsedMs", elapsedMs);
+            SlowStatementLog.log(getDatasourceKey(), sql, elapsedMs, result);
+            StartupMetrics.query();
+            System.out.println("Execute success, rows:" + rows.size() + ", " + elapsedMs + "ms");
+            succeeded = true;
             results.put(result);
         } catch (Exception e) {
             // TODO: handle exception
@@ -161,11 +274,42 @@ public class SQLThread extends ComThread {
             result.put("sql", sql);
             result.put("status", "fail");
             result.put("message", e.getMessage());
+            double elapsedMs = millis(System.nanoTime() - start);
+            result.put("elapsedMs", elapsedMs);
+            SlowStatementLog.log(getDatasourceKey(), sql, elapsedMs, result);
             results.put(result);
         } finally {
             if (stmt != null) {
                 stmt.close();
             }
+            if (ownTransaction) {
+                // Commit like autocommit would, a query may call a function that writes
+                try {
+                    if (succeeded) {
+                        conn.commit();
+                    } else {
+                        conn.rollback();
+                    }
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
         }
     }
+
+    /**
+     * Whether a statement is a query, which can run in a transaction of its own
+     * unlike VACUUM or CREATE INDEX CONCURRENTLY.
+     */
+    private static boolean isQuery(String sql) {
+        String statement = sql.trim().toUpperCase();
+        return statement.startsWith("SELECT") || statement.startsWith("VALUES") || statement.startsWith("TABLE ");
+    }
+
+    /**
+     * Nanoseconds to milliseconds, to the microsecond.
+     */
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
 }
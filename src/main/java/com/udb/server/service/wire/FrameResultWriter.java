@@ -0,0 +1,274 @@
+package com.udb.server.service.wire;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.udb.server.bodies.Result;
+
+/**
+ * The FrameResultWriter class writes a result as length-prefixed binary frames,
+ * so that large grids are not sent as text.
+ * The stream starts with the magic "UDBF" and a version byte, then every frame
+ * is a type byte, the big-endian int length of its payload and the payload:
+ * <ul>
+ * <li>'H' the result without its data, as JSON</li>
+ * <li>'J' a result that is not a grid, as JSON</li>
+ * <li>'S' the schema of a grid: the int length and JSON of the other fields of
+ * the result (columns, sql, index, status, message), the int count of columns,
+ * then the name and the JDBC type of every column</li>
+ * <li>'B' a batch of up to 4096 rows of the grid: the int count of rows, then
+ * for every column the kind byte, the null bitmap and the values that are not
+ * null</li>
+ * <li>'E' the end of the stream</li>
+ * </ul>
+ * The values are fixed-width numbers, dates as the int epoch day, times as the
+ * long nano of day, timestamps as the long microseconds of their wall clock
+ * since the epoch, and strings as the int length and UTF-8 bytes. A column
+ * whose values do not share a kind in a batch is sent as strings, its bytes in
+ * base64.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class FrameResultWriter implements ResultWriter {
+    public static final String CONTENT_TYPE = "application/x-udb-frames";
+    static final byte[] MAGIC = { 'U', 'D', 'B', 'F' };
+    static final int VERSION = 1;
+    // frames
+    static final byte HEADER = 'H';
+    static final byte JSON_RESULT = 'J';
+    static final byte SCHEMA = 'S';
+    static final byte BATCH = 'B';
+    static final byte END = 'E';
+    // kinds of the values of a column
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte DECIMAL = 3;
+    static final byte BOOLEAN = 4;
+    static final byte DATE = 5;
+    static final byte TIME = 6;
+    static final byte TIMESTAMP = 7;
+    static final byte BYTES = 8;
+    static final byte STRING = 9;
+
+    private static final int BATCH_ROWS = 4096;
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream frameBytes = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream frame = new DataOutputStream(frameBytes);
+
+    public FrameResultWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+
+    @Override
+    public void write(Result rs, Queue<Map<String, Object>> results) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        JSONObject header = new JSONObject();
+        header.put("status", rs.getStatus());
+        header.put("startTime", JsonResultWriter.formatDate(rs.getStartTime()));
+        header.put("endTime", JsonResultWriter.formatDate(rs.getEndTime()));
+        header.put("id", rs.getId());
+        header.put("message", rs.getMessage());
+        header.put("progress", rs.getProgress());
+        header.put("detail", rs.getDetail());
+        frame.write(JSON.toJSONBytes(header));
+        writeFrame(HEADER);
+        if (results != null) {
+            Map<String, Object> result;
+            while ((result = results.poll()) != null) {
+                writeResult(result);
+            }
+        } else if (rs.getData() instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> data = (Map<String, Object>) rs.getData();
+            writeResult(data);
+        } else if (rs.getData() != null) {
+            frame.write(JSON.toJSONBytes(rs.getData()));
+            writeFrame(JSON_RESULT);
+        }
+        writeFrame(END);
+        out.flush();
+    }
+
+    private void writeResult(Map<String, Object> result) throws IOException {
+        if (!(result.get("rows") instanceof List)) {
+            frame.write(JSON.toJSONBytes(result));
+            writeFrame(JSON_RESULT);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) result.get("rows");
+        // schema
+        JSONObject meta = new JSONObject();
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            if (!entry.getKey().equals("rows")) {
+                meta.put(entry.getKey(), entry.getValue());
+            }
+        }
+        byte[] metaBytes = JSON.toJSONBytes(meta);
+        frame.writeInt(metaBytes.length);
+        frame.write(metaBytes);
+        List<String> names = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        if (result.get("columns") instanceof List) {
+            for (Object column : (List<?>) result.get("columns")) {
+                if (column instanceof Map && seen.add(String.valueOf(((Map<?, ?>) column).get("columnName")))) {
+                    Object type = ((Map<?, ?>) column).get("columnType");
+                    names.add(String.valueOf(((Map<?, ?>) column).get("columnName")));
+                    types.add(type instanceof Number ? ((Number) type).intValue() : java.sql.Types.OTHER);
+                }
+            }
+        }
+        if (names.isEmpty() && !rows.isEmpty()) {
+            for (String name : rows.get(0).keySet()) {
+                names.add(name);
+                types.add(java.sql.Types.OTHER);
+            }
+        }
+        frame.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            writeString(names.get(i));
+            frame.writeInt(types.get(i));
+        }
+        writeFrame(SCHEMA);
+        // batches
+        for (int start = 0; start < rows.size(); start += BATCH_ROWS) {
+            List<Map<String, Object>> batch = rows.subList(start, Math.min(rows.size(), start + BATCH_ROWS));
+            frame.writeInt(batch.size());
+            for (String name : names) {
+                writeColumn(batch, name);
+            }
+            writeFrame(BATCH);
+        }
+    }
+
+    private void writeColumn(List<Map<String, Object>> batch, String name) throws IOException {
+        byte kind = NULL;
+        byte[] nulls = new byte[(batch.size() + 7) / 8];
+        for (int i = 0; i < batch.size(); i++) {
+            Object value = batch.get(i).get(name);
+            if (value == null) {
+                nulls[i / 8] |= 1 << (i % 8);
+                continue;
+            }
+            byte valueKind = kindOf(value);
+            if (kind == NULL) {
+                kind = valueKind;
+            } else if (kind != valueKind) {
+                kind = STRING;
+            }
+        }
+        frame.writeByte(kind);
+        frame.write(nulls);
+        for (Map<String, Object> row : batch) {
+            Object value = row.get(name);
+            if (value != null) {
+                writeValue(kind, value);
+            }
+        }
+    }
+
+    static byte kindOf(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return LONG;
+        } else if (value instanceof Double || value instanceof Float) {
+            return DOUBLE;
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return DECIMAL;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        } else if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            return DATE;
+        } else if (value instanceof java.sql.Time || value instanceof LocalTime) {
+            return TIME;
+        } else if (value instanceof java.util.Date || value instanceof LocalDateTime) {
+            return TIMESTAMP;
+        } else if (value instanceof byte[]) {
+            return BYTES;
+        }
+        return STRING;
+    }
+
+    private void writeValue(byte kind, Object value) throws IOException {
+        switch (kind) {
+            case LONG:
+                frame.writeLong(((Number) value).longValue());
+                break;
+            case DOUBLE:
+                frame.writeDouble(((Number) value).doubleValue());
+                break;
+            case BOOLEAN:
+                frame.writeBoolean((Boolean) value);
+                break;
+            case DATE:
+                LocalDate date = value instanceof LocalDate ? (LocalDate) value : ((java.sql.Date) value).toLocalDate();
+                frame.writeInt((int) date.toEpochDay());
+                break;
+            case TIME:
+                // toLocalTime() drops the milliseconds of a java.sql.Time
+                LocalTime time = value instanceof LocalTime ? (LocalTime) value
+                        : new java.sql.Timestamp(((java.sql.Time) value).getTime()).toLocalDateTime().toLocalTime();
+                frame.writeLong(time.toNanoOfDay());
+                break;
+            case TIMESTAMP:
+                LocalDateTime dateTime = value instanceof LocalDateTime ? (LocalDateTime) value
+                        : value instanceof java.sql.Timestamp ? ((java.sql.Timestamp) value).toLocalDateTime()
+                                : new java.sql.Timestamp(((java.util.Date) value).getTime()).toLocalDateTime();
+                frame.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC) * 1000000 + dateTime.getNano() / 1000);
+                break;
+            case BYTES:
+                frame.writeInt(((byte[]) value).length);
+                frame.write((byte[]) value);
+                break;
+            default:
+                // DECIMAL and STRING, bytes of a mixed column as base64
+                if (value instanceof byte[]) {
+                    writeString(Base64.getEncoder().encodeToString((byte[]) value));
+                } else {
+                    writeString(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+                }
+                break;
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        frame.writeInt(bytes.length);
+        frame.write(bytes);
+    }
+
+    private void writeFrame(byte type) throws IOException {
+        out.writeByte(type);
+        out.writeInt(frameBytes.size());
+        frameBytes.writeTo(out);
+        frameBytes.reset();
+    }
+
+    @Override
+    public void close() {
+    }
+}
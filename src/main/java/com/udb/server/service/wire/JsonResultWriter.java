@@ -0,0 +1,133 @@
+package com.udb.server.service.wire;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Queue;
+
+import com.alibaba.fastjson2.JSONWriter;
+import com.udb.server.bodies.Result;
+
+/**
+ * The JsonResultWriter class writes a task result straight to the response
+ * stream.
+ * The queued results of the task are written as the data array while they are
+ * polled, and the buffer is flushed to the stream every 64 KB, so that a large
+ * result is neither built as a string nor escaped a second time.
+ * The fields of the result are written like the JSON of the Result class, the
+ * dates in ISO 8601.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public class JsonResultWriter implements ResultWriter {
+    private static final int FLUSH_SIZE = 64 * 1024;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx").withZone(ZoneOffset.UTC);
+
+    private final OutputStream out;
+    private final JSONWriter writer = JSONWriter.ofUTF8();
+
+    public JsonResultWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(Result rs, Queue<Map<String, Object>> results) throws IOException {
+        writer.startObject();
+        writer.writeName("status");
+        writer.writeColon();
+        writer.writeInt32(rs.getStatus());
+        writer.writeName("data");
+        writer.writeColon();
+        if (results == null) {
+            writer.writeAny(rs.getData());
+        } else {
+            writer.startArray();
+            Map<String, Object> result;
+            for (int i = 0; (result = results.poll()) != null; i++) {
+                if (i > 0) {
+                    writer.writeComma();
+                }
+                writeMap(result);
+            }
+            writer.endArray();
+        }
+        writer.writeName("startTime");
+        writer.writeColon();
+        writeDate(rs.getStartTime());
+        writer.writeName("endTime");
+        writer.writeColon();
+        writeDate(rs.getEndTime());
+        writer.writeName("id");
+        writer.writeColon();
+        writer.writeString(rs.getId());
+        writer.writeName("message");
+        writer.writeColon();
+        writer.writeString(rs.getMessage());
+        writer.writeName("progress");
+        writer.writeColon();
+        writer.writeDouble(rs.getProgress());
+        writer.writeName("detail");
+        writer.writeColon();
+        writer.writeAny(rs.getDetail());
+        writer.endObject();
+        writer.flushTo(out);
+        out.flush();
+    }
+
+    /**
+     * Write a result map, the rows of a query one at a time.
+     */
+    private void writeMap(Map<String, Object> map) throws IOException {
+        writer.startObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writer.writeName(entry.getKey());
+            writer.writeColon();
+            if (entry.getValue() instanceof Collection) {
+                writer.startArray();
+                int i = 0;
+                for (Object item : (Collection<?>) entry.getValue()) {
+                    if (i++ > 0) {
+                        writer.writeComma();
+                    }
+                    writer.writeAny(item);
+                    flushIfFull();
+                }
+                writer.endArray();
+            } else {
+                writer.writeAny(entry.getValue());
+            }
+        }
+        writer.endObject();
+        flushIfFull();
+    }
+
+    private void writeDate(Date date) {
+        if (date == null) {
+            writer.writeNull();
+        } else {
+            writer.writeString(formatDate(date));
+        }
+    }
+
+    static String formatDate(Date date) {
+        return date == null ? null : DATE_FORMAT.format(date.toInstant());
+    }
+
+    private void flushIfFull() throws IOException {
+        if (writer.size() >= FLUSH_SIZE) {
+            writer.flushTo(out);
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.udb.server.service.wire;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+
+import com.udb.server.bodies.Result;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The ResultWriter interface writes a result and the queued results of its
+ * task to a response.
+ * The format is chosen from the Accept header of the request: JSON by default,
+ * the binary frames of {@link FrameResultWriter} when the client accepts
+ * {@value FrameResultWriter#CONTENT_TYPE}.
+ *
+ * @author Udb
+ * @version 1.0
+ * @since 1.0
+ */
+public interface ResultWriter {
+
+    /**
+     * Write a result, with the results of its task as data.
+     *
+     * @param rs
+     * @param results the queued results, polled while they are written, or null
+     *                to write the data of the result
+     * @throws IOException
+     */
+    void write(Result rs, Queue<Map<String, Object>> results) throws IOException;
+
+    void close();
+
+    /**
+     * Whether the client asked for the binary frames.
+     *
+     * @param accept the Accept header, may be null
+     * @return
+     */
+    static boolean acceptsFrames(String accept) {
+        return accept != null && accept.contains(FrameResultWriter.CONTENT_TYPE);
+    }
+
+    /**
+     * Choose the writer of a response from the Accept header and set the content
+     * type of the response.
+     *
+     * @param accept   the Accept header, may be null
+     * @param response
+     * @return
+     * @throws IOException
+     */
+    static ResultWriter of(String accept, HttpServletResponse response) throws IOException {
+        if (acceptsFrames(accept)) {
+            response.setContentType(FrameResultWriter.CONTENT_TYPE);
+            return new FrameResultWriter(response.getOutputStream());
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        return new JsonResultWriter(response.getOutputStream());
+    }
+}